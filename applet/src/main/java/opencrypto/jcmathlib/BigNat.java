@@ -19,28 +19,33 @@ public class BigNat extends BigNatInternal {
         super(size, allocatorType, rm);
     }
 
+    /**
+     * Construct a BigNat without its own storage, used for views into the scratch arena.
+     */
+    BigNat(ResourceManager rm) {
+        super(rm);
+    }
+
     /**
      * Division of this BigNat by provided other BigNat.
      */
     public void divide(BigNat other) {
-        BigNat tmp = rm.BN_E;
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
 
-        tmp.lock();
         tmp.clone(this);
         tmp.remainderDivide(other, this);
         copy(tmp);
-        tmp.unlock();
+        rm.release(mark);
     }
 
     /**
      * Greatest common divisor of this BigNat with other BigNat. Result is stored into this.
      */
     public void gcd(BigNat other) {
-        BigNat tmp = rm.BN_A;
-        BigNat tmpOther = rm.BN_B;
-
-        tmp.lock();
-        tmpOther.lock();
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
+        BigNat tmpOther = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
 
         tmpOther.clone(other);
 
@@ -52,22 +57,21 @@ public class BigNat extends BigNatInternal {
             clone(tmp);
         }
 
-        tmp.unlock();
-        tmpOther.unlock();
+        rm.release(mark);
     }
 
     /**
      * Decides whether the arguments are co-prime or not.
      */
     public boolean isCoprime(BigNat a, BigNat b) {
-        BigNat tmp = rm.BN_C;
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
 
-        tmp.lock();
         tmp.clone(a);
 
         tmp.gcd(b);
         boolean result = tmp.isOne();
-        tmp.unlock();
+        rm.release(mark);
         return result;
     }
 
@@ -76,11 +80,11 @@ public class BigNat extends BigNatInternal {
      */
     public void sq() {
         if (!OperationSupport.getInstance().RSA_SQ) {
-            BigNat tmp = rm.BN_E;
-            tmp.lock();
-            tmp.setSize(length());
+            short mark = rm.mark();
+            BigNat tmp = rm.borrowBigNat(length());
             tmp.copy(this);
             super.mult(tmp);
+            rm.release(mark);
             return;
         }
         if ((short) (rm.MAX_SQ_LENGTH - 1) < (short) (2 * length())) {
@@ -90,7 +94,7 @@ public class BigNat extends BigNatInternal {
         byte[] resultBuffer = rm.ARRAY_A;
         short offset = (short) (rm.MAX_SQ_LENGTH - length());
 
-        rm.lock(resultBuffer);
+        rm.lock(rm.ARRAY_A_LOCK);
         Util.arrayFillNonAtomic(resultBuffer, (short) 0, offset, (byte) 0x00);
         copyToByteArray(resultBuffer, offset);
         short len = rm.sqCiph.doFinal(resultBuffer, (short) 0, rm.MAX_SQ_LENGTH, resultBuffer, (short) 0);
@@ -104,7 +108,7 @@ public class BigNat extends BigNatInternal {
         }
         short zeroPrefix = (short) (rm.MAX_SQ_LENGTH - (short) 2 * length());
         fromByteArray(resultBuffer, zeroPrefix, (short) (rm.MAX_SQ_LENGTH - zeroPrefix));
-        rm.unlock(resultBuffer);
+        rm.unlock(rm.ARRAY_A_LOCK);
         shrink();
     }
 
@@ -161,14 +165,14 @@ public class BigNat extends BigNatInternal {
      * Negate current BigNat modulo provided modulus.
      */
     public void modNegate(BigNat mod) {
-        BigNat tmp = rm.BN_B;
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
 
-        tmp.lock();
         tmp.clone(mod);
         tmp.subtract(this);
         setSize(mod.length());
         copy(tmp);
-        tmp.unlock();
+        rm.release(mark);
     }
 
     /**
@@ -253,7 +257,7 @@ public class BigNat extends BigNatInternal {
                 // Simulator fails when reusing the original object
                 rm.expPub = (RSAPublicKey) KeyBuilder.buildKey(KeyBuilder.TYPE_RSA_PUBLIC, rm.MAX_EXP_BIT_LENGTH, false);
             }
-            rm.lock(tmpBuffer);
+            rm.lock(rm.ARRAY_A_LOCK);
             short len = exp.copyToByteArray(tmpBuffer, (short) 0);
             rm.expPub.setExponent(tmpBuffer, (short) 0, len);
             if (OperationSupport.getInstance().RSA_RESIZE_MOD) {
@@ -278,7 +282,7 @@ public class BigNat extends BigNatInternal {
                 // Simulator fails when reusing the original object
                 rm.expPriv = (RSAPrivateKey) KeyBuilder.buildKey(KeyBuilder.TYPE_RSA_PRIVATE, rm.MAX_EXP_BIT_LENGTH, false);
             }
-            rm.lock(tmpBuffer);
+            rm.lock(rm.ARRAY_A_LOCK);
             short len = exp.copyToByteArray(tmpBuffer, (short) 0);
             rm.expPriv.setExponent(tmpBuffer, (short) 0, len);
             if (OperationSupport.getInstance().RSA_RESIZE_MOD) {
@@ -312,7 +316,7 @@ public class BigNat extends BigNatInternal {
             }
         }
         tmpMod.fromByteArray(tmpBuffer, (short) 0, rm.MAX_EXP_LENGTH);
-        rm.unlock(tmpBuffer);
+        rm.unlock(rm.ARRAY_A_LOCK);
 
         if (OperationSupport.getInstance().RSA_EXTRA_MOD) {
             tmpMod.mod(mod);
@@ -326,29 +330,27 @@ public class BigNat extends BigNatInternal {
      * Computes modular inversion. The result is stored into this.
      */
     public void modInv(BigNat mod) {
-        BigNat tmp = rm.BN_B;
-        tmp.lock();
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
         tmp.clone(mod);
         tmp.decrement();
         tmp.decrement();
 
         modExp(tmp, mod);
-        tmp.unlock();
+        rm.release(mark);
     }
 
     /**
      * Multiplication of this and other modulo mod. The result is stored to this.
      */
     public void modMult(BigNat other, BigNat mod) {
-        BigNat tmp = rm.BN_D;
-        BigNat result = rm.BN_E;
-
         if (OperationSupport.getInstance().RSA_CHECK_ONE && isOne()) {
             copy(other);
             return;
         }
 
-        result.lock();
+        short mark = rm.mark();
+        BigNat result = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
         if (!OperationSupport.getInstance().RSA_SQ || OperationSupport.getInstance().RSA_EXTRA_MOD) {
             result.clone(this);
             result.mult(other);
@@ -369,7 +371,7 @@ public class BigNat extends BigNatInternal {
             result.shiftRight((short) 1, carry);
             result.resize(mod.length());
 
-            tmp.lock();
+            BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
             tmp.clone(result);
             tmp.modSub(other, mod);
 
@@ -377,11 +379,10 @@ public class BigNat extends BigNatInternal {
             tmp.modSq(mod);
 
             result.modSub(tmp, mod);
-            tmp.unlock();
         }
         setSize(mod.length());
         copy(result);
-        result.unlock();
+        rm.release(mark);
     }
 
     /**
@@ -404,29 +405,25 @@ public class BigNat extends BigNatInternal {
      * the two roots) is stored to this.
      */
     public void modSqrt(BigNat p) {
-        BigNat s = rm.BN_A;
-        BigNat exp = rm.BN_A;
-        BigNat p1 = rm.BN_B;
-        BigNat q = rm.BN_C;
-        BigNat tmp = rm.BN_D;
-        BigNat z = rm.BN_E;
+        short mark = rm.mark();
+        short pLength = p.length();
 
         // 1. By factoring out powers of 2, find Q and S such that p-1=Q2^S p-1=Q*2^S and Q is odd
-        p1.lock();
+        BigNat p1 = rm.borrowBigNat(pLength);
         p1.clone(p);
         p1.decrement();
 
         // Compute Q
-        q.lock();
+        BigNat q = rm.borrowBigNat(pLength);
         q.clone(p1);
         q.shiftRight((short) 1); // Q /= 2
 
         // Compute S
-        s.lock();
-        s.setSize(p.length());
+        short sMark = rm.mark();
+        BigNat s = rm.borrowBigNat(pLength);
         s.zero();
-        tmp.lock();
-        tmp.setSize(p.length());
+        BigNat tmp = rm.borrowBigNat((short) (2 * pLength));
+        tmp.setSize(pLength);
         tmp.zero();
 
         while (!tmp.equals(q)) {
@@ -438,19 +435,16 @@ public class BigNat extends BigNatInternal {
             tmp.mod(p);
             tmp.shrink();
         }
-        tmp.unlock();
-        s.unlock();
+        rm.release(sMark);
 
         // 2. Find the first quadratic non-residue z by brute-force search
-        exp.lock();
+        BigNat exp = rm.borrowBigNat(pLength);
         exp.clone(p1);
         exp.shiftRight((short) 1);
 
-
-        z.lock();
-        z.setSize(p.length());
+        BigNat z = rm.borrowBigNat(pLength);
         z.setValue((byte) 1);
-        tmp.lock();
+        tmp = rm.borrowBigNat(pLength);
         tmp.setValue((byte) 1);
 
         while (!tmp.equals(p1)) {
@@ -458,16 +452,120 @@ public class BigNat extends BigNatInternal {
             tmp.copy(z);
             tmp.modExp(exp, p);
         }
-        p1.unlock();
-        tmp.unlock();
-        z.unlock();
         exp.copy(q);
-        q.unlock();
         exp.increment();
         exp.shiftRight((short) 1);
 
         mod(p);
         modExp(exp, p);
-        exp.unlock();
+        rm.release(mark);
+    }
+
+    /**
+     * Computes non-adjacent form (NAF) of this BigNat. Digits from {-1, 0, 1} are written least significant
+     * first, no two consecutive digits are non-zero.
+     *
+     * @param out       output array, must have space for bitLength() + 2 digits
+     * @param outOffset start offset within output array
+     * @return number of digits
+     */
+    public short toNAF(byte[] out, short outOffset) {
+        return toWNAF((short) 2, out, outOffset);
+    }
+
+    /**
+     * Computes width-w non-adjacent form (wNAF) of this BigNat. Digits are written least significant first,
+     * each non-zero digit is odd with absolute value less than 2^(w-1) and is followed by at least w - 1 zeroes.
+     *
+     * @param width     window width w, between 2 and 8
+     * @param out       output array, must have space for bitLength() + width digits
+     * @param outOffset start offset within output array
+     * @return number of digits (trailing zero digits are not counted)
+     */
+    public short toWNAF(short width, byte[] out, short outOffset) {
+        if (width < 2 || width > 8) {
+            ISOException.throwIt(ReturnCodes.SW_BIGNAT_INVALIDWIDTH);
+        }
+        short bitLength = bitLength();
+        short windowSize = (short) (1 << width);
+        short half = (short) (windowSize >> 1);
+        short len = 0;
+        short i = 0;
+        short carry = 0;
+
+        // carry is added to the bits of this BigNat at index i; no copy of the value is modified
+        while (i < bitLength || carry != 0) {
+            short sum = (short) (getBit(i) + carry);
+            if ((short) (sum & 1) == 0) {
+                out[(short) (outOffset + i)] = 0;
+                carry = (short) (sum >> 1);
+                i++;
+                continue;
+            }
+            short digit = (short) (getBits(i, width) + carry);
+            if (digit >= half) {
+                digit -= windowSize;
+                carry = 1;
+            } else {
+                carry = 0;
+            }
+            out[(short) (outOffset + i)] = (byte) digit;
+            len = (short) (i + 1);
+            Util.arrayFillNonAtomic(out, (short) (outOffset + len), (short) (width - 1), (byte) 0);
+            i += width;
+        }
+        return len;
+    }
+
+    /**
+     * Computes joint sparse form (JSF) of this and other BigNat. Digit pairs from {-1, 0, 1} are written least
+     * significant first, digit of this at even and digit of other at odd positions.
+     *
+     * @param other     second BigNat
+     * @param out       output array, must have space for 2 * (max(bitLength()) + 1) digits
+     * @param outOffset start offset within output array
+     * @return number of digit pairs
+     */
+    public short toJSF(BigNat other, byte[] out, short outOffset) {
+        short bitLength = bitLength();
+        short otherBitLength = other.bitLength();
+        if (otherBitLength > bitLength) {
+            bitLength = otherBitLength;
+        }
+        short d0 = 0;
+        short d1 = 0;
+        short j = 0;
+
+        while (j < bitLength || d0 != 0 || d1 != 0) {
+            // l = d + (k >> j) mod 8
+            short l0 = (short) ((short) (getBits(j, (short) 3) + d0) & 7);
+            short l1 = (short) ((short) (other.getBits(j, (short) 3) + d1) & 7);
+            short u0 = jsfDigit(l0, l1);
+            short u1 = jsfDigit(l1, l0);
+            if ((short) (2 * d0) == (short) (1 + u0)) {
+                d0 = (short) (1 - d0);
+            }
+            if ((short) (2 * d1) == (short) (1 + u1)) {
+                d1 = (short) (1 - d1);
+            }
+            out[(short) (outOffset + 2 * j)] = (byte) u0;
+            out[(short) (outOffset + 2 * j + 1)] = (byte) u1;
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * Computes a single JSF digit from the current window of both scalars (Solinas).
+     */
+    private static short jsfDigit(short l, short lOther) {
+        if ((short) (l & 1) == 0) {
+            return 0;
+        }
+        short u = (short) (l & 3) == 1 ? (short) 1 : (short) -1;
+        if ((l == 3 || l == 5) && (short) (lOther & 3) == 2) {
+            u = (short) -u;
+        }
+        return u;
     }
 }
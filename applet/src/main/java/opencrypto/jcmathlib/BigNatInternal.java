@@ -15,6 +15,10 @@ public class BigNatInternal {
     private byte[] value;
     private short size; // The current size of internal representation in bytes.
     private short offset;
+    private short begin; // Start of the region of value owned by this BigNat.
+    private short end; // End of the region of value owned by this BigNat, the least significant byte is at end - 1.
+    private short peakSize; // The largest size set since the last resetPeakSize while peak usage is recorded.
+    private short dirtySize; // The largest size since the last erase, bytes before end - dirtySize are zero.
 
     /**
      * Construct a BigNat of at least a given size in bytes.
@@ -24,6 +28,43 @@ public class BigNatInternal {
         this.offset = 1;
         this.size = size;
         this.value = rm.memAlloc.allocateByteArray((short) (size + 1), allocatorType);
+        this.begin = 0;
+        this.end = (short) value.length;
+        this.dirtySize = size;
+    }
+
+    /**
+     * Construct a BigNat without its own storage. It has to be bound to a region of a byte array
+     * using bind before use.
+     */
+    BigNatInternal(ResourceManager rm) {
+        this.rm = rm;
+    }
+
+    /**
+     * Bind this BigNat to a region of a byte array. The region has to hold size + 1 bytes, the same amount
+     * the allocating constructor reserves. Previous value is lost.
+     *
+     * @param buffer the byte array
+     * @param bufferOffset start of the region
+     * @param size the size of this BigNat in bytes
+     */
+    void bind(byte[] buffer, short bufferOffset, short size) {
+        value = buffer;
+        begin = bufferOffset;
+        end = (short) (bufferOffset + size + 1);
+        this.size = size;
+        offset = (short) (end - size);
+        dirtySize = size;
+    }
+
+    /**
+     * Get the maximum size of this BigNat in bytes.
+     *
+     * @return capacity in bytes
+     */
+    short capacity() {
+        return (short) (end - begin);
     }
 
     /**
@@ -35,7 +76,7 @@ public class BigNatInternal {
      * @return number of bytes read
      */
     public short fromByteArray(byte[] source, short sourceOffset, short length) {
-        short read = length <= (short) value.length ? length : (short) value.length;
+        short read = length <= capacity() ? length : capacity();
         setSize(read);
         Util.arrayCopyNonAtomic(source, sourceOffset, value, offset, size);
         return size;
@@ -70,11 +111,34 @@ public class BigNatInternal {
      * @param newSize the new size
      */
     public void setSize(short newSize) {
-        if (newSize < 0 || newSize > value.length) {
+        if (newSize < 0 || newSize > capacity()) {
             ISOException.throwIt(ReturnCodes.SW_BIGNAT_RESIZETOLONGER);
         }
         size = newSize;
-        offset = (short) (value.length - size);
+        offset = (short) (end - size);
+        if (newSize > dirtySize) {
+            dirtySize = newSize;
+        }
+        if (rm.PROFILE_PEAK_USAGE && newSize > peakSize) {
+            peakSize = newSize;
+        }
+    }
+
+    /**
+     * Get the largest size this BigNat was set to since the last resetPeakSize while peak usage was recorded,
+     * see {@code ResourceManager.resetPeakUsage()}.
+     *
+     * @return peak size in bytes
+     */
+    public short getPeakSize() {
+        return peakSize;
+    }
+
+    /**
+     * Reset the peak size record to zero.
+     */
+    public void resetPeakSize() {
+        peakSize = 0;
     }
 
     /**
@@ -83,7 +147,7 @@ public class BigNatInternal {
      * @param erase flag indicating whether to set internal representation to zero
      */
     public void setSizeToMax(boolean erase) {
-        setSize((short) value.length);
+        setSize(capacity());
         if (erase) {
             erase();
         }
@@ -95,7 +159,7 @@ public class BigNatInternal {
      * @param newSize new size in bytes
      */
     public void resize(short newSize) {
-        if (newSize > (short) value.length) {
+        if (newSize > capacity()) {
             ISOException.throwIt(ReturnCodes.SW_BIGNAT_REALLOCATIONNOTALLOWED);
         }
 
@@ -138,13 +202,13 @@ public class BigNatInternal {
      */
     public void shrink() {
         short i;
-        for (i = offset; i < value.length; i++) { // Find first non-zero byte
+        for (i = offset; i < end; i++) { // Find first non-zero byte
             if (value[i] != 0) {
                 break;
             }
         }
 
-        short newSize = (short) (value.length - i);
+        short newSize = (short) (end - i);
         if (newSize < 0) {
             ISOException.throwIt(ReturnCodes.SW_BIGNAT_INVALIDRESIZE);
         }
@@ -162,7 +226,16 @@ public class BigNatInternal {
      * Erase the internal array of this BigNat.
      */
     public void erase() {
-        Util.arrayFillNonAtomic(value, (short) 0, (short) value.length, (byte) 0);
+        Util.arrayFillNonAtomic(value, begin, capacity(), (byte) 0);
+        dirtySize = size;
+    }
+
+    /**
+     * Erase the part of the internal array this BigNat may have written to since the last erase.
+     */
+    void eraseDirty() {
+        Util.arrayFillNonAtomic(value, (short) (end - dirtySize), dirtySize, (byte) 0);
+        dirtySize = size;
     }
 
     /**
@@ -170,7 +243,7 @@ public class BigNatInternal {
      */
     public void setValue(byte newValue) {
         zero();
-        value[(short) (value.length - 1)] = (byte) (newValue & DIGIT_MASK);
+        value[(short) (end - 1)] = (byte) (newValue & DIGIT_MASK);
     }
 
     /**
@@ -178,8 +251,8 @@ public class BigNatInternal {
      */
     public void setValue(short newValue) {
         zero();
-        value[(short) (value.length - 1)] = (byte) (newValue & DIGIT_MASK);
-        value[(short) (value.length - 2)] = (byte) ((short) (newValue >> 8) & DIGIT_MASK);
+        value[(short) (end - 1)] = (byte) (newValue & DIGIT_MASK);
+        value[(short) (end - 2)] = (byte) ((short) (newValue >> 8) & DIGIT_MASK);
     }
 
     /**
@@ -214,14 +287,14 @@ public class BigNatInternal {
      * Copies a BigNat into this including its size. May require reallocation.
      */
     public void clone(BigNatInternal other) {
-        if (other.size > (short) value.length) {
+        if (other.size > capacity()) {
             ISOException.throwIt(ReturnCodes.SW_BIGNAT_REALLOCATIONNOTALLOWED);
         }
 
-        short diff = (short) ((short) value.length - other.size);
+        short diff = (short) (end - other.size);
         other.copyToByteArray(value, diff);
         if (diff > 0) {
-            Util.arrayFillNonAtomic(value, (short) 0, diff, (byte) 0);
+            Util.arrayFillNonAtomic(value, begin, (short) (diff - begin), (byte) 0);
         }
         setSize(other.size);
     }
@@ -230,7 +303,7 @@ public class BigNatInternal {
      * Test equality with zero.
      */
     public boolean isZero() {
-        for (short i = offset; i < value.length; i++) {
+        for (short i = offset; i < end; i++) {
             if (value[i] != 0) {
                 return false; // CTO
             }
@@ -242,19 +315,83 @@ public class BigNatInternal {
      * Test equality with one.
      */
     public boolean isOne() {
-        for (short i = offset; i < (short) (value.length - 1); i++) {
+        for (short i = offset; i < (short) (end - 1); i++) {
             if (value[i] != 0) {
                 return false; // CTO
             }
         }
-        return value[(short) (value.length - 1)] == (byte) 0x01;
+        return value[(short) (end - 1)] == (byte) 0x01;
     }
 
     /**
      * Check if stored BigNat is odd.
      */
     public boolean isOdd() {
-        return (byte) (value[(short) (value.length - 1)] & (byte) 1) != (byte) 0;
+        return (byte) (value[(short) (end - 1)] & (byte) 1) != (byte) 0;
+    }
+
+    /**
+     * Get value of a bit. Index 0 denotes the least significant bit, bits beyond the size of this BigNat are zero.
+     *
+     * @param index index of the bit
+     * @return 1 if the bit is set, 0 otherwise
+     */
+    public byte getBit(short index) {
+        short byteIndex = (short) ((short) (end - 1) - (short) (index >> 3));
+        if (index < 0 || byteIndex < offset) {
+            return 0;
+        }
+        return (byte) ((value[byteIndex] >> (short) (index & 7)) & 1);
+    }
+
+    /**
+     * Test if a bit is set. Index 0 denotes the least significant bit.
+     *
+     * @param index index of the bit
+     * @return true if the bit is set
+     */
+    public boolean testBit(short index) {
+        return getBit(index) != 0;
+    }
+
+    /**
+     * Get up to 8 consecutive bits starting at given index as an unsigned value.
+     *
+     * @param index index of the least significant bit of the window
+     * @param width number of bits (at most 8)
+     * @return value of the bits
+     */
+    public short getBits(short index, short width) {
+        short byteIndex = (short) ((short) (end - 1) - (short) (index >> 3));
+        short word = 0;
+        if (byteIndex >= offset) {
+            word = (short) (value[byteIndex] & DIGIT_MASK);
+        }
+        if ((short) (byteIndex - 1) >= offset) {
+            word |= (short) ((short) (value[(short) (byteIndex - 1)] & DIGIT_MASK) << DIGIT_LEN);
+        }
+        return (short) ((short) ((word >> (short) (index & 7)) & POSITIVE_DOUBLE_DIGIT_MASK) & (short) ((short) (1 << width) - 1));
+    }
+
+    /**
+     * Get number of bits needed to represent the value of this BigNat, i.e., index of the most significant
+     * set bit plus one. Zero has bit length 0.
+     *
+     * @return bit length
+     */
+    public short bitLength() {
+        for (short i = offset; i < end; i++) {
+            if (value[i] != 0) {
+                short bits = (short) ((short) ((short) (end - 1) - i) * DIGIT_LEN);
+                short b = (short) (value[i] & DIGIT_MASK);
+                while (b != 0) {
+                    bits++;
+                    b = (short) (b >> 1);
+                }
+                return bits;
+            }
+        }
+        return 0;
     }
 
     /**
@@ -276,9 +413,9 @@ public class BigNatInternal {
             }
         }
 
-        for (short i = (short) (start + offset); i < (short) value.length; i++, j++) {
+        for (short i = (short) (start + offset); i < end; i++, j++) {
             short thisValue = (short) (value[i] & DIGIT_MASK);
-            short otherValue = (j >= other.offset && j < (short) other.value.length) ? (short) (other.value[j] & DIGIT_MASK) : (short) 0;
+            short otherValue = (j >= other.offset && j < other.end) ? (short) (other.value[j] & DIGIT_MASK) : (short) 0;
             if (thisValue < otherValue) {
                 return true; // CTO
             }
@@ -304,29 +441,29 @@ public class BigNatInternal {
 
 
         if (diff < 0) {
-            short end = (short) (other.offset - diff);
-            for (short i = other.offset; i < end; ++i) {
+            short otherStart = (short) (other.offset - diff);
+            for (short i = other.offset; i < otherStart; ++i) {
                 if (other.value[i] != (byte) 0) {
                     return false;
                 }
             }
-            return Util.arrayCompare(value, (short) 0, other.value, end, size) == 0;
+            return Util.arrayCompare(value, offset, other.value, otherStart, size) == 0;
         }
 
-        short end = diff;
-        for (short i = (short) 0; i < end; ++i) {
+        short thisStart = (short) (offset + diff);
+        for (short i = offset; i < thisStart; ++i) {
             if (value[i] != (byte) 0) {
                 return false;
             }
         }
-        return Util.arrayCompare(value, end, other.value, other.offset, other.size) == 0;
+        return Util.arrayCompare(value, thisStart, other.value, other.offset, other.size) == 0;
     }
 
     /**
      * Increment this BigNat.
      */
     public void increment() {
-        for (short i = (short) (value.length - 1); i >= offset; i--) {
+        for (short i = (short) (end - 1); i >= offset; i--) {
             short tmp = (short) (value[i] & 0xff);
             value[i] = (byte) (tmp + 1);
             if (tmp < 255) {
@@ -340,7 +477,7 @@ public class BigNatInternal {
      */
     public void decrement() {
         short tmp;
-        for (short i = (short) (value.length - 1); i >= offset; i--) {
+        for (short i = (short) (end - 1); i >= offset; i--) {
             tmp = (short) (value[i] & 0xff);
             value[i] = (byte) (tmp - 1);
             if (tmp != 0) {
@@ -445,8 +582,8 @@ public class BigNatInternal {
         tmp.lock();
         tmp.clone(this);
         setSizeToMax(true);
-        for (short i = (short) (other.value.length - 1); i >= other.offset; i--) {
-            add(tmp, (short) (other.value.length - 1 - i), (short) (other.value[i] & DIGIT_MASK));
+        for (short i = (short) (other.end - 1); i >= other.offset; i--) {
+            add(tmp, (short) (other.end - 1 - i), (short) (other.value[i] & DIGIT_MASK));
         }
         shrink();
         tmp.unlock();
@@ -461,7 +598,7 @@ public class BigNatInternal {
     protected void shiftRight(short bits, short carry) {
         // assumes 0 <= bits < 8
         short mask = (short) ((short) (1 << bits) - 1); // lowest `bits` bits set to 1
-        for (short i = offset; i < (short) value.length; i++) {
+        for (short i = offset; i < end; i++) {
             short current = (short) (value[i] & 0xff);
             short previous = current;
             current >>= bits;
@@ -502,8 +639,8 @@ public class BigNatInternal {
         short divisionRound = 0;
         short firstDivisorDigit = (short) (divisor.value[divisorIndex] & DIGIT_MASK);
         short divisorBitShift = (short) (highestOneBit((short) (firstDivisorDigit + 1)) - 1);
-        byte secondDivisorDigit = divisorIndex < (short) (divisor.value.length - 1) ? divisor.value[(short) (divisorIndex + 1)] : 0;
-        byte thirdDivisorDigit = divisorIndex < (short) (divisor.value.length - 2) ? divisor.value[(short) (divisorIndex + 2)] : 0;
+        byte secondDivisorDigit = divisorIndex < (short) (divisor.end - 1) ? divisor.value[(short) (divisorIndex + 1)] : 0;
+        byte thirdDivisorDigit = divisorIndex < (short) (divisor.end - 2) ? divisor.value[(short) (divisorIndex + 2)] : 0;
 
         while (divisorShift >= 0) {
             while (!isLesser(divisor, divisorShift, (short) (divisionRound > 0 ? divisionRound - 1 : 0))) {
@@ -597,6 +734,17 @@ public class BigNatInternal {
     private boolean ERASE_ON_LOCK = false;
     private boolean ERASE_ON_UNLOCK = false;
     private boolean locked = false; // Logical flag to store info if this BigNat is currently used for some operation. Used as a prevention of unintentional parallel use of same temporary pre-allocated BigNat.
+    private byte allocatorId = -1; // Allocator id under which locks of this BigNat are profiled, -1 if not profiled.
+
+    /**
+     * Register this BigNat for lock profiling under the given allocator id.
+     *
+     * @param objectAllocatorID allocator id of this BigNat (see ObjectAllocator)
+     */
+    public void registerLock(byte objectAllocatorID) {
+        allocatorId = objectAllocatorID;
+        rm.locker.profileLockLengths[objectAllocatorID] = capacity();
+    }
 
     /**
      * Lock/reserve this BigNat for subsequent use.
@@ -608,6 +756,7 @@ public class BigNatInternal {
             ISOException.throwIt(ReturnCodes.SW_LOCK_ALREADYLOCKED);
         }
         locked = true;
+        rm.locker.profileLock(allocatorId);
         if (ERASE_ON_LOCK) {
             erase();
         }
@@ -1,5 +1,6 @@
 package opencrypto.jcmathlib;
 
+import javacard.framework.ISOException;
 import javacard.framework.JCSystem;
 import javacard.framework.Util;
 import javacard.security.ECPrivateKey;
@@ -12,15 +13,42 @@ import javacard.security.KeyPair;
  */
 public class ECCurve {
     public final short KEY_BIT_LENGTH, POINT_SIZE, COORD_SIZE;
+    public final byte A_SHAPE;
     public ResourceManager rm;
 
     public byte[] p, a, b, G, r;
     public BigNat pBN, aBN, bBN, rBN;
+    public BigNat glvBeta, glvLambda, glvG1, glvG2, glvMinusB1, glvMinusB2;
+    public BigNat sswuA, sswuB, sswuZ, sswuSqrtMinusZ, sswuSqrtExponent, sswuX1, sswuX1Exceptional;
 
+    // Shape of parameter a, used to select specialised doubling formulas
+    public static final byte A_GENERIC = 0;
+    public static final byte A_ZERO = 1;
+    public static final byte A_MINUS_THREE = 2;
 
-    public KeyPair disposablePair;
-    public ECPrivateKey disposablePriv;
-    public ECPublicKey disposablePub;
+    private static final short HELPER_POINTS = 4;
+    private ECPoint[] helperPoints;
+    // Serialized (G, 2G, 3G), valid only if fixedBaseTableReady is set
+    byte[] fixedBaseTable;
+    boolean fixedBaseTableReady;
+    byte[] sswuIsogeny;
+
+
+    // Disposable keys are shared by curves of the same bit length and assigned by loadDisposable(),
+    // use the getters which load them first
+    private KeyPair disposablePair;
+    private ECPrivateKey disposablePriv;
+    private ECPublicKey disposablePub;
+
+    // Digests of the scalar and the generator loaded into disposablePriv, used to skip redundant key setup.
+    // Erased by invalidateDisposable(), which is called when another curve claims the pair and by rm.erase()
+    private static final short DISPOSABLE_S = 0;
+    private static final short DISPOSABLE_G = 1;
+    byte[] disposableDigests;
+    private boolean[] disposableLoaded;
+
+    // Cleared together with the RAM holding pBN and rBN, null if they are persistent
+    boolean[] constantsLoaded;
 
     /**
      * Creates new curve object from provided parameters. Parameters are not copied, the
@@ -44,30 +72,300 @@ public class ECCurve {
         this.r = r;
         this.rm = rm;
 
-        pBN = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+        byte constantsType = rm.memAlloc.getAllocatorType(ObjectAllocator.CURVE_CONSTANTS);
+        pBN = new BigNat(COORD_SIZE, constantsType, rm);
         pBN.fromByteArray(p, (short) 0, (short) p.length);
         aBN = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
         aBN.fromByteArray(a, (short) 0, (short) a.length);
         bBN = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
         bBN.fromByteArray(b, (short) 0, (short) b.length);
-        rBN = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+        rBN = new BigNat(COORD_SIZE, constantsType, rm);
         rBN.fromByteArray(r, (short) 0, (short) r.length);
+        rm.curveConstantsLength += (short) (2 * (COORD_SIZE + 1));
+        if (constantsType == JCSystem.MEMORY_TYPE_TRANSIENT_RESET) {
+            constantsLoaded = JCSystem.makeTransientBooleanArray((short) 1, JCSystem.CLEAR_ON_RESET);
+        } else if (constantsType == JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT) {
+            constantsLoaded = JCSystem.makeTransientBooleanArray((short) 1, JCSystem.CLEAR_ON_DESELECT);
+        }
+        if (constantsLoaded != null) {
+            constantsLoaded[0] = true;
+        }
+
+        BigNat tmp = rm.EC_BN_A;
+        tmp.lock();
+        tmp.clone(aBN);
+        tmp.modAdd(ResourceManager.THREE, pBN);
+        A_SHAPE = aBN.isZero() ? A_ZERO : tmp.isZero() ? A_MINUS_THREE : A_GENERIC;
+        tmp.unlock();
 
-        disposablePair = newKeyPair(null);
-        disposablePriv = (ECPrivateKey) disposablePair.getPrivate();
-        disposablePub = (ECPublicKey) disposablePair.getPublic();
+        disposableDigests = rm.memAlloc.allocateByteArray((short) (2 * rm.hashEngine.getLength()), JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+        disposableLoaded = JCSystem.makeTransientBooleanArray((short) 2, JCSystem.CLEAR_ON_RESET);
+
+        if (OperationSupport.getInstance().EC_SW_MULT || rm.ecMultKA == null) {
+            enableSwMultiplication();
+        }
     }    
     
     /**
      * Refresh critical information stored in RAM for performance reasons after a card reset (RAM was cleared).
+     * Constants are reloaded only if their RAM was actually cleared, parameters a and b are persistent.
+     * Not required anymore, ECPoint operations call {@code rehydrate()} on first use.
      */
     public void updateAfterReset() {
-        pBN.fromByteArray(p, (short) 0, (short) p.length);
-        aBN.fromByteArray(a, (short) 0, (short) a.length);
-        bBN.fromByteArray(b, (short) 0, (short) b.length);
-        rBN.fromByteArray(r, (short) 0, (short) r.length);
+        rehydrate();
+    }
+
+    /**
+     * Reload pBN and rBN if the RAM holding them was cleared by a reset or deselect since they were last loaded.
+     * Called by ECPoint operations, applets using pBN or rBN directly have to call it first.
+     */
+    public void rehydrate() {
+        if (constantsLoaded != null && !constantsLoaded[0]) {
+            pBN.fromByteArray(p, (short) 0, (short) p.length);
+            rBN.fromByteArray(r, (short) 0, (short) r.length);
+            constantsLoaded[0] = true;
+        }
     }
     
+    /**
+     * Enables GLV scalar decomposition for software scalar multiplication. Applicable only to curves with
+     * an efficiently computable endomorphism phi(x, y) = (beta * x, y) = lambda * (x, y) (e.g., secp256k1).
+     * Parameters are copied into persistent BigNats.
+     *
+     * @param beta cube root of unity modulo p
+     * @param lambda cube root of unity modulo r corresponding to beta
+     * @param g1 rounded value of b2 * 2^(3 * KEY_BIT_LENGTH / 2) / r
+     * @param g2 rounded value of -b1 * 2^(3 * KEY_BIT_LENGTH / 2) / r
+     * @param minusB1 value of -b1 of the decomposition lattice basis
+     * @param minusB2 value of -b2 (mod r) of the decomposition lattice basis
+     */
+    public void setGLV(byte[] beta, byte[] lambda, byte[] g1, byte[] g2, byte[] minusB1, byte[] minusB2) {
+        if (glvLambda == null) {
+            glvBeta = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            glvLambda = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            glvG1 = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            glvG2 = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            glvMinusB1 = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            glvMinusB2 = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+        }
+        glvBeta.fromByteArray(beta, (short) 0, (short) beta.length);
+        glvLambda.fromByteArray(lambda, (short) 0, (short) lambda.length);
+        glvG1.fromByteArray(g1, (short) 0, (short) g1.length);
+        glvG2.fromByteArray(g2, (short) 0, (short) g2.length);
+        glvMinusB1.fromByteArray(minusB1, (short) 0, (short) minusB1.length);
+        glvMinusB2.fromByteArray(minusB2, (short) 0, (short) minusB2.length);
+        enableSwMultiplication();
+    }
+
+    /**
+     * Allocates helper points and the fixed-base table used by software scalar multiplication. Called by the
+     * constructor if the card computes scalar multiplication in software and by {@code setGLV}; applets
+     * switching {@code OperationSupport.EC_SW_MULT} on after the curve was created have to call it themselves.
+     */
+    public void enableSwMultiplication() {
+        if (helperPoints != null) {
+            return;
+        }
+        helperPoints = new ECPoint[HELPER_POINTS];
+        for (short i = 0; i < HELPER_POINTS; i++) {
+            helperPoints[i] = new RawECPoint(this, true);
+        }
+        fixedBaseTable = new byte[(short) (3 * POINT_SIZE)];
+    }
+
+    /**
+     * Enables hashing to this curve using the simplified SWU map. Curves with a = 0 or b = 0 (e.g., secp256k1) are
+     * mapped via an isogenous curve E' given by a and b and the coefficients of the isogeny map E' -> E. Constants
+     * derived from the parameters are precomputed into persistent BigNats. Applicable only to curves with p = 3 (mod 4).
+     *
+     * @param a parameter a of the curve the map targets (this curve or E')
+     * @param b parameter b of the curve the map targets (this curve or E')
+     * @param z non-square constant Z of the map, reduced modulo p
+     * @param isogeny concatenated coefficients of x_num, x_den, y_num and y_den, lowest degree first and without
+     *                the leading coefficients of the denominators, or null if the map targets this curve
+     */
+    public void setSSWU(byte[] a, byte[] b, byte[] z, byte[] isogeny) {
+        if ((byte) (p[(short) (p.length - 1)] & 0x03) != 0x03) {
+            ISOException.throwIt(ReturnCodes.SW_OPERATION_NOT_SUPPORTED);
+        }
+        if (sswuZ == null) {
+            sswuA = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuB = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuZ = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuSqrtMinusZ = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuSqrtExponent = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuX1 = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+            sswuX1Exceptional = new BigNat(COORD_SIZE, JCSystem.MEMORY_TYPE_PERSISTENT, rm);
+        }
+        sswuA.fromByteArray(a, (short) 0, (short) a.length);
+        sswuB.fromByteArray(b, (short) 0, (short) b.length);
+        sswuZ.fromByteArray(z, (short) 0, (short) z.length);
+        sswuIsogeny = isogeny;
+        rehydrate();
+
+        BigNat tmp = rm.EC_BN_A;
+        BigNat inv = rm.EC_BN_B;
+
+        // Square roots are computed as x^((p + 1) / 4)
+        tmp.lock();
+        tmp.clone(pBN);
+        tmp.increment();
+        tmp.shiftRight((short) 2);
+        sswuSqrtExponent.copy(tmp);
+        tmp.clone(sswuZ);
+        tmp.modNegate(pBN);
+        tmp.modExp(sswuSqrtExponent, pBN);
+        sswuSqrtMinusZ.copy(tmp);
+
+        // x1 = -B / A, exceptional x1 = B / (Z * A)
+        inv.lock();
+        inv.clone(sswuA);
+        inv.modInv(pBN);
+        tmp.clone(sswuB);
+        tmp.modMult(inv, pBN);
+        tmp.modNegate(pBN);
+        sswuX1.copy(tmp);
+        tmp.unlock();
+        inv.clone(sswuZ);
+        inv.modMult(sswuA, pBN);
+        inv.modInv(pBN);
+        inv.modMult(sswuB, pBN);
+        sswuX1Exceptional.copy(inv);
+        inv.unlock();
+    }
+
+    /**
+     * Returns helper point of this curve used by software scalar multiplication. Helper points are allocated
+     * by {@code enableSwMultiplication} and reused by all operations.
+     *
+     * @param index index of the helper point
+     * @return helper point
+     */
+    ECPoint getHelperPoint(short index) {
+        if (helperPoints == null) {
+            ISOException.throwIt(ReturnCodes.SW_OPERATION_NOT_SUPPORTED);
+        }
+        return helperPoints[index];
+    }
+
+    /**
+     * Assigns the disposable key pair shared by curves of this bit length to this curve and sets domain
+     * parameters of this curve in it if another curve used it last. Must be called before the disposable
+     * keys are used. The pair holds no key value until one is set or generated.
+     */
+    public void loadDisposable() {
+        if (disposablePair == null) {
+            disposablePair = rm.getDisposablePair(KEY_BIT_LENGTH);
+            disposablePriv = (ECPrivateKey) disposablePair.getPrivate();
+            disposablePub = (ECPublicKey) disposablePair.getPublic();
+        }
+        if (rm.claimDisposablePair(disposablePair, this)) {
+            setDomainParameters(disposablePub, disposablePriv);
+            invalidateDisposable();
+        }
+    }
+
+    /**
+     * Returns the disposable key pair shared by curves of this bit length, loaded with domain parameters
+     * of this curve. The pair is valid only until another curve of the same bit length uses it.
+     *
+     * @return disposable key pair
+     */
+    public KeyPair getDisposablePair() {
+        loadDisposable();
+        return disposablePair;
+    }
+
+    /**
+     * Returns private key of the disposable key pair, see {@code getDisposablePair}. Modifications of the key
+     * must be followed by {@code invalidateDisposable}.
+     *
+     * @return disposable private key
+     */
+    public ECPrivateKey getDisposablePriv() {
+        loadDisposable();
+        return disposablePriv;
+    }
+
+    /**
+     * Returns public key of the disposable key pair, see {@code getDisposablePair}.
+     *
+     * @return disposable public key
+     */
+    public ECPublicKey getDisposablePub() {
+        loadDisposable();
+        return disposablePub;
+    }
+
+    /**
+     * Sets scalar of the disposable private key, unless the key already holds the same scalar.
+     *
+     * @param buffer array with the scalar
+     * @param offset offset of the scalar
+     * @param length length of the scalar
+     */
+    void setDisposableS(byte[] buffer, short offset, short length) {
+        loadDisposable();
+        if (updateDisposableDigest(buffer, offset, length, DISPOSABLE_S)) {
+            disposablePriv.setS(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Sets generator of the disposable private key, unless the key already holds the same generator.
+     *
+     * @param buffer array with the serialized generator
+     * @param offset offset of the generator
+     * @param length length of the generator
+     */
+    void setDisposableG(byte[] buffer, short offset, short length) {
+        loadDisposable();
+        if (updateDisposableDigest(buffer, offset, length, DISPOSABLE_G)) {
+            disposablePriv.setG(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Forgets values loaded into the disposable private key and erases their digests. Must be called after
+     * the key is modified other than by {@code setDisposableS} and {@code setDisposableG}.
+     */
+    public void invalidateDisposable() {
+        disposableLoaded[DISPOSABLE_S] = false;
+        disposableLoaded[DISPOSABLE_G] = false;
+        Util.arrayFillNonAtomic(disposableDigests, (short) 0, (short) disposableDigests.length, (byte) 0);
+        rm.invalidateKeyAgreements(disposablePriv);
+    }
+
+    /**
+     * Compares digest of provided value with the digest of the value loaded into the disposable private key
+     * and records the new digest if they differ. Digests are compared so that a mismatch position of the
+     * secret scalar is not leaked via timing side-channel.
+     *
+     * @param buffer array with the value
+     * @param offset offset of the value
+     * @param length length of the value
+     * @param index index of the key component
+     * @return true if the key component has to be set
+     */
+    private boolean updateDisposableDigest(byte[] buffer, short offset, short length, short index) {
+        byte[] hashBuffer = rm.HASH_ARRAY;
+        short digestLength = rm.hashEngine.getLength();
+        short digestOffset = (short) (index * digestLength);
+
+        rm.lock(rm.HASH_ARRAY_LOCK);
+        rm.hashEngine.doFinal(buffer, offset, length, hashBuffer, (short) 0);
+        boolean changed = !disposableLoaded[index]
+                || Util.arrayCompare(hashBuffer, (short) 0, disposableDigests, digestOffset, digestLength) != 0;
+        if (changed) {
+            Util.arrayCopyNonAtomic(hashBuffer, (short) 0, disposableDigests, digestOffset, digestLength);
+            disposableLoaded[index] = true;
+            rm.invalidateKeyAgreements(disposablePriv);
+        }
+        Util.arrayFillNonAtomic(hashBuffer, (short) 0, digestLength, (byte) 0);
+        rm.unlock(rm.HASH_ARRAY_LOCK);
+        return changed;
+    }
+
     /**
      * Creates a new keyPair based on this curve parameters. KeyPair object is reused if provided. Fresh keyPair value is generated.
      * @param keyPair existing KeyPair object which is reused if required. If null, new KeyPair is allocated
@@ -84,7 +382,19 @@ public class ECCurve {
             pubKey = (ECPublicKey) keyPair.getPublic();
             privKey = (ECPrivateKey) keyPair.getPrivate();
         }
+        setDomainParameters(pubKey, privKey);
+        keyPair.genKeyPair();
+
+        return keyPair;
+    }
 
+    /**
+     * Sets domain parameters of this curve in provided keys.
+     *
+     * @param pubKey public key
+     * @param privKey private key
+     */
+    private void setDomainParameters(ECPublicKey pubKey, ECPrivateKey privKey) {
         privKey.setFieldFP(p, (short) 0, (short) p.length);
         privKey.setA(a, (short) 0, (short) a.length);
         privKey.setB(b, (short) 0, (short) b.length);
@@ -98,9 +408,5 @@ public class ECCurve {
         pubKey.setG(G, (short) 0, (short) G.length);
         pubKey.setR(r, (short) 0, (short) r.length);
         pubKey.setK((short) 1);
-
-        keyPair.genKeyPair();
-
-        return keyPair;
     }
 }
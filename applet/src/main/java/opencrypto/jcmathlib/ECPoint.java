@@ -1,6 +1,7 @@
 package opencrypto.jcmathlib;
 
 import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
 import javacard.framework.Util;
 import javacard.security.*;
 
@@ -13,6 +14,16 @@ public class ECPoint {
     private ECPublicKey point;
     private KeyPair pointKeyPair;
     private final ECCurve curve;
+    // Serialized value of raw points, which have no ECPublicKey
+    private byte[] raw;
+
+    // Optional cache of Jacobian coordinates (X:Y:Z); when DIRTY is set, the cache is newer than the point object,
+    // when PROJECTIVE is set, Z differs from one and the cache must be normalized before use of affine coordinates
+    private static final byte CACHE_VALID = 0;
+    private static final byte CACHE_DIRTY = 1;
+    private static final byte CACHE_PROJECTIVE = 2;
+    private BigNat cachedX, cachedY, cachedZ;
+    private boolean[] cacheState;
 
     /**
      * Creates new ECPoint object for provided {@code curve}. Random initial point value is generated.
@@ -20,8 +31,46 @@ public class ECPoint {
      * @param curve point's elliptic curve
      */
     public ECPoint(ECCurve curve) {
+        this(curve, false);
+    }
+
+    /**
+     * Creates new ECPoint object for provided {@code curve}. Random initial point value is generated.
+     * If {@code cacheCoordinates} is set, parsed affine coordinates are kept in RAM so that consecutive
+     * software operations do not serialize and parse the point again. Updated coordinates are written
+     * into the underlying {@code ECPublicKey} lazily, when the point value is read via {@code getW} or
+     * {@code asPublicKey}, or by {@code flush}. The cache is cleared on card reset, so a point that has to
+     * keep its value across resets must be flushed after being modified. Cached points are doubled in
+     * Jacobian coordinates without a modular inversion.
+     *
+     * @param curve point's elliptic curve
+     * @param cacheCoordinates true if parsed coordinates should be cached
+     */
+    public ECPoint(ECCurve curve, boolean cacheCoordinates) {
+        this(curve, cacheCoordinates, false);
+    }
+
+    /**
+     * Creates new ECPoint object for provided {@code curve}. If {@code rawValue} is set, the point value is kept
+     * in a transient array and no {@code KeyPair} is allocated; the initial value is the curve generator and
+     * the curve's disposable keys are borrowed whenever a hardware operation needs the value as a key.
+     *
+     * @param curve point's elliptic curve
+     * @param cacheCoordinates true if parsed coordinates should be cached
+     * @param rawValue true if the point value should be kept in a transient array
+     */
+    protected ECPoint(ECCurve curve, boolean cacheCoordinates, boolean rawValue) {
         this.curve = curve;
         this.rm = curve.rm;
+        if (rawValue) {
+            raw = rm.memAlloc.allocateByteArray(curve.POINT_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+        }
+        if (cacheCoordinates) {
+            cachedX = new BigNat(curve.COORD_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+            cachedY = new BigNat(curve.COORD_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+            cachedZ = new BigNat(curve.COORD_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+            cacheState = JCSystem.makeTransientBooleanArray((short) 3, JCSystem.CLEAR_ON_RESET);
+        }
         updatePointObjects();
     }
 
@@ -31,23 +80,38 @@ public class ECPoint {
      * @return length of this point in bytes
      */
     public short length() {
+        if (raw != null) {
+            return (short) (curve.KEY_BIT_LENGTH / 8);
+        }
         return (short) (point.getSize() / 8);
     }
 
     /**
      * Properly updates all point values in case of a change of an underlying curve.
-     * New random point value is generated.
+     * New random point value is generated, raw points are set to the curve generator.
      */
     public final void updatePointObjects() {
-        pointKeyPair = curve.newKeyPair(pointKeyPair);
-        point = (ECPublicKey) pointKeyPair.getPublic();
+        if (raw != null) {
+            Util.arrayCopyNonAtomic(curve.G, (short) 0, raw, (short) 0, curve.POINT_SIZE);
+        } else {
+            pointKeyPair = curve.newKeyPair(pointKeyPair);
+            point = (ECPublicKey) pointKeyPair.getPublic();
+        }
+        invalidateCache();
     }
 
     /**
      * Generates new random point value.
      */
     public void randomize() {
-        pointKeyPair.genKeyPair();
+        if (raw != null) {
+            curve.getDisposablePair().genKeyPair();
+            curve.invalidateDisposable();
+            curve.getDisposablePub().getW(raw, (short) 0);
+        } else {
+            pointKeyPair.genKeyPair();
+        }
+        invalidateCache();
     }
 
     /**
@@ -62,10 +126,10 @@ public class ECPoint {
         }
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
         short len = other.getW(pointBuffer, (short) 0);
         setW(pointBuffer, (short) 0, len);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
     }
 
     /**
@@ -78,7 +142,8 @@ public class ECPoint {
      * @param length length of point
      */
     public void setW(byte[] buffer, short offset, short length) {
-        point.setW(buffer, offset, length);
+        storeW(buffer, offset, length);
+        invalidateCache();
     }
 
     /**
@@ -89,19 +154,49 @@ public class ECPoint {
      * @return length of serialized point (number of bytes)
      */
     public short getW(byte[] buffer, short offset) {
-        return point.getW(buffer, offset);
+        curve.rehydrate();
+        if (isCacheDirty()) {
+            flushCache(buffer, offset);
+            return curve.POINT_SIZE;
+        }
+        return loadW(buffer, offset);
     }
 
     /**
      * Returns this point value as ECPublicKey object. No copy of point is made
      * before return, so change of returned object will also change this point value.
+     * Raw points return the curve's disposable public key set to the point value, which
+     * is valid only until the next operation using the disposable keys.
      *
      * @return point as ECPublicKey object
      */
     public ECPublicKey asPublicKey() {
+        curve.rehydrate();
+        flush();
+        // The returned key may be changed by the caller, the cached coordinates would not follow
+        invalidateCache();
+        if (raw != null) {
+            ECPublicKey pub = curve.getDisposablePub();
+            pub.setW(raw, (short) 0, curve.POINT_SIZE);
+            return pub;
+        }
         return point;
     }
 
+    /**
+     * Writes coordinates modified in the cache into the underlying {@code ECPublicKey}. Points created
+     * without coordinate caching are always up to date.
+     */
+    public void flush() {
+        if (isCacheDirty()) {
+            byte[] pointBuffer = rm.POINT_ARRAY_A;
+
+            rm.lock(rm.POINT_ARRAY_A_LOCK);
+            flushCache(pointBuffer, (short) 0);
+            rm.unlock(rm.POINT_ARRAY_A_LOCK);
+        }
+    }
+
     /**
      * Returns curve associated with this point. No copy of curve is made
      * before return, so change of returned object will also change curve for
@@ -121,12 +216,18 @@ public class ECPoint {
      * @return length of X coordinate (in bytes)
      */
     public short getX(byte[] buffer, short offset) {
+        curve.rehydrate();
+        if (isCacheValid()) {
+            normalize();
+            cachedX.prependZeros(curve.COORD_SIZE, buffer, offset);
+            return curve.COORD_SIZE;
+        }
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
-        point.getW(pointBuffer, (short) 0);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        getW(pointBuffer, (short) 0);
         Util.arrayCopyNonAtomic(pointBuffer, (short) 1, buffer, offset, curve.COORD_SIZE);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
         return curve.COORD_SIZE;
     }
 
@@ -138,12 +239,18 @@ public class ECPoint {
      * @return length of Y coordinate (in bytes)
      */
     public short getY(byte[] buffer, short offset) {
+        curve.rehydrate();
+        if (isCacheValid()) {
+            normalize();
+            cachedY.prependZeros(curve.COORD_SIZE, buffer, offset);
+            return curve.COORD_SIZE;
+        }
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
-        point.getW(pointBuffer, (short) 0);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        getW(pointBuffer, (short) 0);
         Util.arrayCopyNonAtomic(pointBuffer, (short) (1 + curve.COORD_SIZE), buffer, offset, curve.COORD_SIZE);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
         return curve.COORD_SIZE;
     }
 
@@ -151,28 +258,24 @@ public class ECPoint {
      * Double this point. Pure implementation without KeyAgreement.
      */
     public void swDouble() {
-        byte[] pointBuffer = rm.POINT_ARRAY_A;
+        curve.rehydrate();
+        if (cacheState != null) {
+            jacobianDouble();
+            return;
+        }
         BigNat pX = rm.EC_BN_B;
         BigNat pY = rm.EC_BN_C;
         BigNat lambda = rm.EC_BN_D;
         BigNat tmp = rm.EC_BN_E;
 
-        rm.lock(pointBuffer);
-        getW(pointBuffer, (short) 0);
-
         pX.lock();
-        pX.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
-
         pY.lock();
-        pY.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
+        readCoordinates(pX, pY);
 
         lambda.lock();
-        lambda.clone(pX);
-        lambda.modSq(curve.pBN);
-        lambda.modMult(ResourceManager.THREE, curve.pBN);
-        lambda.modAdd(curve.aBN, curve.pBN);
-
         tmp.lock();
+        tangentNumerator(pX, lambda, tmp);
+
         tmp.clone(pY);
         tmp.modAdd(tmp, curve.pBN);
         tmp.modInv(curve.pBN);
@@ -181,30 +284,47 @@ public class ECPoint {
         tmp.modSq(curve.pBN);
         tmp.modSub(pX, curve.pBN);
         tmp.modSub(pX, curve.pBN);
-        tmp.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
 
-        tmp.modSub(pX, curve.pBN);
-        pX.unlock();
-        tmp.modMult(lambda, curve.pBN);
+        // y_r = lambda(x_p - x_r) - y_p
+        pX.modSub(tmp, curve.pBN);
+        pX.modMult(lambda, curve.pBN);
         lambda.unlock();
-        tmp.modAdd(pY, curve.pBN);
-        tmp.modNegate(curve.pBN);
+        pX.modSub(pY, curve.pBN);
         pY.unlock();
-        tmp.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
-        tmp.unlock();
 
-        setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        rm.unlock(pointBuffer);
+        writeCoordinates(tmp, pX);
+        tmp.unlock();
+        pX.unlock();
     }
 
 
+    /**
+     * Computes numerator 3x^2 + a of the tangent slope with a single squaring. Curves with a = 0 skip the addition
+     * of a. Multiplication by 3 is done by modular additions. The factorisation 3(x - 1)(x + 1) for a = -3 would
+     * replace the squaring with a multiplication, which is more expensive here, so it is used only by jacobianDouble.
+     *
+     * @param x X coordinate of the doubled point
+     * @param result BigNat for the result
+     * @param tmp temporary BigNat, overwritten
+     */
+    private void tangentNumerator(BigNat x, BigNat result, BigNat tmp) {
+        result.clone(x);
+        result.modSq(curve.pBN);
+        tmp.clone(result);
+        result.modAdd(tmp, curve.pBN);
+        result.modAdd(tmp, curve.pBN);
+        if (curve.A_SHAPE != ECCurve.A_ZERO) {
+            result.modAdd(curve.aBN, curve.pBN);
+        }
+    }
+
     /**
      * Doubles the current value of this point.
      */
     public void makeDouble() {
         // doubling via add sometimes causes exception inside KeyAgreement engine
         // this.add(this);
-        // Use bit slower, but more robust version via multiplication by 2
+        // Use bit slower, but more robust version via multiplication by 2, which doubles in software if EC_SW_DOUBLE
         this.multiplication(ResourceManager.TWO);
     }
 
@@ -214,6 +334,7 @@ public class ECPoint {
      * @param other point to be added to this.
      */
     public void add(ECPoint other) {
+        curve.rehydrate();
         if (OperationSupport.getInstance().EC_HW_ADD) {
             hwAdd(other);
         } else {
@@ -221,6 +342,94 @@ public class ECPoint {
         }
     }
 
+    /**
+     * Adds affine point serialized in uncompressed form (as returned by {@code getW}) to this point.
+     * Points with cached coordinates are kept in Jacobian coordinates and no modular inversion is computed.
+     * H = x2 * Z1^2 - X1, R = y2 * Z1^3 - Y1, X3 = R^2 - H^3 - 2 * X1 * H^2,
+     * Y3 = R(X1 * H^2 - X3) - Y1 * H^3, Z3 = Z1 * H
+     *
+     * @param buffer array with serialized affine point
+     * @param offset start offset within the array
+     */
+    public void addAffine(byte[] buffer, short offset) {
+        curve.rehydrate();
+        BigNat x = rm.EC_BN_B;
+        BigNat y = rm.EC_BN_C;
+        BigNat z = rm.EC_BN_D;
+        BigNat h = rm.EC_BN_E;
+        BigNat r = rm.EC_BN_A;
+        BigNat t = rm.EC_BN_G;
+
+        x.lock();
+        y.lock();
+        z.lock();
+        loadJacobian(x, y, z);
+
+        // H = x2 * Z1^2 - X1
+        t.lock();
+        t.clone(z);
+        t.modSq(curve.pBN);
+        h.lock();
+        h.setSize(curve.COORD_SIZE);
+        h.fromByteArray(buffer, (short) (offset + 1), curve.COORD_SIZE);
+        h.modMult(t, curve.pBN);
+        h.modSub(x, curve.pBN);
+
+        // R = y2 * Z1^3 - Y1
+        r.lock();
+        r.setSize(curve.COORD_SIZE);
+        r.fromByteArray(buffer, (short) (offset + 1 + curve.COORD_SIZE), curve.COORD_SIZE);
+        r.modMult(t, curve.pBN);
+        r.modMult(z, curve.pBN);
+        r.modSub(y, curve.pBN);
+
+        if (h.isZero()) {
+            boolean samePoint = r.isZero();
+            r.unlock();
+            h.unlock();
+            t.unlock();
+            x.unlock();
+            y.unlock();
+            z.unlock();
+            if (!samePoint) {
+                ISOException.throwIt(ReturnCodes.SW_ECPOINT_INFINITY);
+            }
+            swDouble();
+            return;
+        }
+
+        // Z3 = Z1 * H
+        z.modMult(h, curve.pBN);
+
+        // t = X1 * H^2, h = H^3
+        t.clone(h);
+        t.modSq(curve.pBN);
+        h.modMult(t, curve.pBN);
+        t.modMult(x, curve.pBN);
+
+        // X3 = R^2 - H^3 - 2 * X1 * H^2
+        x.clone(r);
+        x.modSq(curve.pBN);
+        x.modSub(h, curve.pBN);
+        x.modSub(t, curve.pBN);
+        x.modSub(t, curve.pBN);
+
+        // Y3 = R(X1 * H^2 - X3) - Y1 * H^3
+        t.modSub(x, curve.pBN);
+        t.modMult(r, curve.pBN);
+        r.unlock();
+        y.modMult(h, curve.pBN);
+        h.unlock();
+        t.modSub(y, curve.pBN);
+        y.clone(t);
+        t.unlock();
+
+        storeJacobian(x, y, z);
+        x.unlock();
+        y.unlock();
+        z.unlock();
+    }
+
     /**
      * Implements adding of two points without ALG_EC_PACE_GM.
      *
@@ -243,15 +452,9 @@ public class ECPoint {
         BigNat denominator = rm.EC_BN_C;
         BigNat lambda = rm.EC_BN_A;
 
-        rm.lock(pointBuffer);
-        point.getW(pointBuffer, (short) 0);
         xP.lock();
-        xP.setSize(curve.COORD_SIZE);
-        xP.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
         yP.lock();
-        yP.setSize(curve.COORD_SIZE);
-        yP.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
-        rm.unlock(pointBuffer);
+        readCoordinates(xP, yP);
 
 
         // l = (y_q-y_p)/(x_q-x_p))
@@ -264,10 +467,7 @@ public class ECPoint {
         if (samePoint) {
             // lambda = (3(x_p^2)+a)/(2y_p)
             // (3(x_p^2)+a)
-            nominator.clone(xP);
-            nominator.modSq(curve.pBN);
-            nominator.modMult(ResourceManager.THREE, curve.pBN);
-            nominator.modAdd(curve.aBN, curve.pBN);
+            tangentNumerator(xP, nominator, denominator);
             // (2y_p)
             denominator.clone(yP);
             denominator.modMult(ResourceManager.TWO, curve.pBN);
@@ -275,14 +475,8 @@ public class ECPoint {
 
         } else {
             // lambda = (y_q-y_p) / (x_q-x_p) mod p
-            rm.lock(pointBuffer);
-            other.point.getW(pointBuffer, (short) 0);
             xQ.lock();
-            xQ.setSize(curve.COORD_SIZE);
-            xQ.fromByteArray(pointBuffer, (short) 1, other.curve.COORD_SIZE);
-            nominator.setSize(curve.COORD_SIZE);
-            nominator.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
-            rm.unlock(pointBuffer);
+            other.readCoordinates(xQ, nominator);
 
             nominator.mod(curve.pBN);
 
@@ -307,17 +501,17 @@ public class ECPoint {
         // x_r = lambda^2 - x_p - x_q
         xR.lock();
         if (samePoint) {
-            rm.lock(pointBuffer);
+            rm.lock(rm.POINT_ARRAY_A_LOCK);
             short len = multXKA(ResourceManager.TWO, pointBuffer, (short) 0);
             xR.fromByteArray(pointBuffer, (short) 0, len);
-            rm.unlock(pointBuffer);
+            rm.unlock(rm.POINT_ARRAY_A_LOCK);
         } else {
             xR.clone(lambda);
             xR.modSq(curve.pBN);
             xR.modSub(xP, curve.pBN);
             xR.modSub(xQ, curve.pBN);
+            xQ.unlock();
         }
-        xQ.unlock();
 
         // y_r = lambda(x_p - x_r) - y_p
         yR.lock();
@@ -329,15 +523,9 @@ public class ECPoint {
         yR.modSub(yP, curve.pBN);
         yP.unlock();
 
-        rm.lock(pointBuffer);
-        pointBuffer[0] = (byte) 0x04;
-        // If x_r.length() and y_r.length() is smaller than curve.COORD_SIZE due to leading zeroes which were shrunk before, then we must add these back
-        xR.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
+        writeCoordinates(xR, yR);
         xR.unlock();
-        yR.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
         yR.unlock();
-        setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        rm.unlock(pointBuffer);
     }
 
     /**
@@ -348,9 +536,9 @@ public class ECPoint {
     private void hwAdd(ECPoint other) {
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
         setW(pointBuffer, (short) 0, multAndAddKA(ResourceManager.ONE_COORD, other, pointBuffer, (short) 0));
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
     }
 
     /**
@@ -359,6 +547,16 @@ public class ECPoint {
      * @param scalarBytes value of scalar for multiplication
      */
     public void multiplication(byte[] scalarBytes, short scalarOffset, short scalarLen) {
+        curve.rehydrate();
+        if (isSwMultiplication()) {
+            byte[] scalarBuffer = rm.ARRAY_B;
+
+            rm.lock(rm.ARRAY_B_LOCK);
+            Util.arrayCopyNonAtomic(scalarBytes, scalarOffset, scalarBuffer, (short) 0, scalarLen);
+            swMultiplication(scalarBuffer, scalarLen);
+            rm.unlock(rm.ARRAY_B_LOCK);
+            return;
+        }
         BigNat scalar = rm.EC_BN_F;
 
         scalar.lock();
@@ -374,8 +572,16 @@ public class ECPoint {
      * @param scalar value of scalar for multiplication
      */
     public void multiplication(BigNat scalar) {
+        curve.rehydrate();
         if (OperationSupport.getInstance().EC_SW_DOUBLE && scalar.equals(ResourceManager.TWO)) {
             swDouble();
+        } else if (isSwMultiplication()) {
+            byte[] scalarBuffer = rm.ARRAY_B;
+
+            rm.lock(rm.ARRAY_B_LOCK);
+            short len = scalar.copyToByteArray(scalarBuffer, (short) 0);
+            swMultiplication(scalarBuffer, len);
+            rm.unlock(rm.ARRAY_B_LOCK);
         // } else if (rm.ecMultKA.getAlgorithm() == KeyAgreement.ALG_EC_SVDP_DH_PLAIN_XY) {
         } else if (rm.ecMultKA.getAlgorithm() == (byte) 6) {
             multXY(scalar);
@@ -387,6 +593,507 @@ public class ECPoint {
         }
     }
 
+    /**
+     * Returns true if scalar multiplication is computed in software instead of via KeyAgreement.
+     */
+    private boolean isSwMultiplication() {
+        return OperationSupport.getInstance().EC_SW_MULT || rm.ecMultKA == null;
+    }
+
+    /**
+     * Multiply value of this point by provided scalar using software 2-bit fixed window method with table
+     * (P, 2P, 3P) of affine points. The curve generator uses a table precomputed once per curve. If GLV
+     * parameters are set for the curve, the scalar is decomposed and both halves are processed simultaneously.
+     * Stores the result into this point.
+     *
+     * @param scalar    array with big-endian scalar starting at offset 0; its content is overwritten
+     * @param scalarLen length of the scalar
+     */
+    private void swMultiplication(byte[] scalar, short scalarLen) {
+        if (curve.glvLambda != null) {
+            short half = (short) (curve.COORD_SIZE / 2 + 1);
+            byte signs = glvDecompose(scalar, scalarLen, half);
+            glvMultiplication(scalar, half, signs);
+            return;
+        }
+
+        // Scalars not lower than r are reduced first, as done by the GLV decomposition
+        BigNat k = rm.EC_BN_A;
+        k.lock();
+        k.fromByteArray(scalar, (short) 0, scalarLen);
+        k.mod(curve.rBN);
+        k.shrink();
+        k.prependZeros(scalarLen, scalar, (short) 0);
+        k.unlock();
+
+        byte[] table = null;
+        if (isGenerator()) {
+            table = fixedBaseTable();
+        } else {
+            ECPoint p1 = curve.getHelperPoint((short) 0);
+            ECPoint p2 = curve.getHelperPoint((short) 1);
+            ECPoint p3 = curve.getHelperPoint((short) 2);
+
+            p1.copy(this);
+            p2.copy(this);
+            p2.swDouble();
+            p3.copy(p2);
+            p3.addAffine(p1.serialize(), (short) 0);
+            p2.serialize();
+            p3.serialize();
+        }
+        windowMultiplication(scalar, scalarLen, table);
+    }
+
+    /**
+     * Left-to-right 2-bit fixed window loop. Doublings and mixed additions are computed on a helper point
+     * held in Jacobian coordinates, the result is copied into this point.
+     *
+     * @param scalar    array with big-endian scalar starting at offset 0
+     * @param scalarLen length of the scalar
+     * @param table     serialized points (P, 2P, 3P), or null if they are serialized in the first three helper points
+     */
+    private void windowMultiplication(byte[] scalar, short scalarLen, byte[] table) {
+        ECPoint acc = curve.getHelperPoint((short) 3);
+
+        boolean started = false;
+        for (short i = 0; i < scalarLen; i++) {
+            for (short j = 6; j >= 0; j -= 2) {
+                byte digit = (byte) ((scalar[i] >> j) & 3);
+                if (started) {
+                    acc.swDouble();
+                    acc.swDouble();
+                }
+                if (digit != 0) {
+                    byte[] entry = table;
+                    short offset = (short) ((short) (digit - 1) * curve.POINT_SIZE);
+                    if (table == null) {
+                        entry = curve.getHelperPoint((short) (digit - 1)).raw;
+                        offset = 0;
+                    }
+                    if (started) {
+                        acc.addAffine(entry, offset);
+                    } else {
+                        acc.setW(entry, offset, curve.POINT_SIZE);
+                        started = true;
+                    }
+                }
+            }
+        }
+        if (!started) {
+            ISOException.throwIt(ReturnCodes.SW_ECPOINT_INFINITY);
+        }
+        copy(acc);
+    }
+
+    /**
+     * Returns true if this point equals the generator of its curve.
+     */
+    private boolean isGenerator() {
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        short len = getW(pointBuffer, (short) 0);
+        boolean result = len == curve.POINT_SIZE && Util.arrayCompare(pointBuffer, (short) 0, curve.G, (short) 0, len) == 0;
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+        return result;
+    }
+
+    /**
+     * Returns table (G, 2G, 3G) of serialized multiples of the curve generator. The table is allocated by the
+     * curve and computed on first use.
+     */
+    private byte[] fixedBaseTable() {
+        if (!curve.fixedBaseTableReady) {
+            byte[] table = curve.fixedBaseTable;
+            ECPoint tmp = curve.getHelperPoint((short) 0);
+
+            Util.arrayCopyNonAtomic(curve.G, (short) 0, table, (short) 0, curve.POINT_SIZE);
+            tmp.setW(curve.G, (short) 0, curve.POINT_SIZE);
+            tmp.swDouble();
+            tmp.getW(table, curve.POINT_SIZE);
+            tmp.addAffine(curve.G, (short) 0);
+            tmp.getW(table, (short) (2 * curve.POINT_SIZE));
+            // set only when complete, an interrupted computation is repeated on next use
+            curve.fixedBaseTableReady = true;
+        }
+        return curve.fixedBaseTable;
+    }
+
+    /**
+     * Decomposes scalar k into k1 and k2 such that k = k1 + k2 * lambda (mod r) with |k1|, |k2| of about
+     * half of the bit length of r. Magnitudes of k1 and k2 are stored into scalar array, each of length half.
+     *
+     * @param scalar    array with big-endian scalar starting at offset 0
+     * @param scalarLen length of the scalar
+     * @param half      length of each of the resulting halves
+     * @return bit 0 set if k1 is negative, bit 1 set if k2 is negative
+     */
+    private byte glvDecompose(byte[] scalar, short scalarLen, short half) {
+        BigNat product = rm.EC_BN_A;
+        BigNat k = rm.EC_BN_B;
+        BigNat c1 = rm.EC_BN_C;
+        BigNat c2 = rm.EC_BN_D;
+        BigNat halfR = rm.EC_BN_E;
+
+        product.lock();
+        product.fromByteArray(scalar, (short) 0, scalarLen);
+        product.mod(curve.rBN);
+        product.shrink();
+        k.lock();
+        k.clone(product);
+
+        // c1 = round(k * g1 / 2^384), c2 = round(k * g2 / 2^384) for 256-bit curves
+        c1.lock();
+        glvRoundedProduct(k, curve.glvG1, product, c1, half);
+        c2.lock();
+        glvRoundedProduct(k, curve.glvG2, product, c2, half);
+
+        // k2 = c1 * (-b1) + c2 * (-b2) mod r
+        product.clone(c1);
+        product.mult(curve.glvMinusB1);
+        product.mod(curve.rBN);
+        product.shrink();
+        c1.clone(product);
+        product.clone(c2);
+        product.mult(curve.glvMinusB2);
+        product.mod(curve.rBN);
+        product.shrink();
+        c2.clone(product);
+        c1.modAdd(c2, curve.rBN);
+        c2.unlock();
+        BigNat k2 = c1;
+
+        // k1 = k - k2 * lambda mod r
+        product.clone(k2);
+        product.mult(curve.glvLambda);
+        product.mod(curve.rBN);
+        product.shrink();
+        k.modSub(product, curve.rBN);
+        product.unlock();
+        BigNat k1 = k;
+
+        // Values above r / 2 represent negative halves
+        byte signs = 0;
+        halfR.lock();
+        halfR.clone(curve.rBN);
+        halfR.shiftRight((short) 1);
+        if (halfR.isLesser(k1)) {
+            k1.modNegate(curve.rBN);
+            signs |= 1;
+        }
+        if (halfR.isLesser(k2)) {
+            k2.modNegate(curve.rBN);
+            signs |= 2;
+        }
+        halfR.unlock();
+
+        k1.shrink();
+        k1.prependZeros(half, scalar, (short) 0);
+        k1.unlock();
+        k2.shrink();
+        k2.prependZeros(half, scalar, half);
+        k2.unlock();
+        return signs;
+    }
+
+    /**
+     * Computes result = round(k * g / 2^(3 * KEY_BIT_LENGTH / 2)) for GLV decomposition.
+     *
+     * @param k       scalar
+     * @param g       GLV constant g1 or g2
+     * @param product locked temporary of at least 2 * COORD_SIZE bytes
+     * @param result  result of length half
+     * @param half    length of the result
+     */
+    private void glvRoundedProduct(BigNat k, BigNat g, BigNat product, BigNat result, short half) {
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+        short productLen = (short) (2 * curve.COORD_SIZE + 1);
+
+        product.clone(k);
+        product.mult(g);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        product.prependZeros(productLen, pointBuffer, (short) 0);
+        result.fromByteArray(pointBuffer, (short) 0, half);
+        if ((byte) (pointBuffer[half] & (byte) 0x80) != 0) {
+            result.increment();
+        }
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+    }
+
+    /**
+     * Computes k1 * P + k2 * phi(P) via interleaved double-and-add (Shamir's trick) and stores the result
+     * into this point. Table points are added to a Jacobian accumulator using mixed addition.
+     *
+     * @param scalar array with k1 at offset 0 and k2 at offset half
+     * @param half   length of each half
+     * @param signs  signs of k1 and k2 as returned by glvDecompose
+     */
+    private void glvMultiplication(byte[] scalar, short half, byte signs) {
+        ECPoint t1 = curve.getHelperPoint((short) 0);
+        ECPoint t2 = curve.getHelperPoint((short) 1);
+        ECPoint t3 = curve.getHelperPoint((short) 2);
+
+        t1.copy(this);
+        if ((byte) (signs & 1) != 0) {
+            t1.negate();
+        }
+        t2.copy(this);
+        t2.endomorphism();
+        if ((byte) (signs & 2) != 0) {
+            t2.negate();
+        }
+        t3.copy(t1);
+        t3.add(t2);
+        t1.serialize();
+        t2.serialize();
+        t3.serialize();
+
+        ECPoint acc = curve.getHelperPoint((short) 3);
+
+        boolean started = false;
+        for (short i = 0; i < half; i++) {
+            for (short j = 7; j >= 0; j--) {
+                byte digit = (byte) (((scalar[i] >> j) & 1) | (((scalar[(short) (half + i)] >> j) & 1) << 1));
+                if (started) {
+                    acc.swDouble();
+                }
+                if (digit != 0) {
+                    byte[] entry = curve.getHelperPoint((short) (digit - 1)).raw;
+                    if (started) {
+                        acc.addAffine(entry, (short) 0);
+                    } else {
+                        acc.setW(entry, (short) 0, curve.POINT_SIZE);
+                        started = true;
+                    }
+                }
+            }
+        }
+        if (!started) {
+            ISOException.throwIt(ReturnCodes.SW_ECPOINT_INFINITY);
+        }
+        copy(acc);
+    }
+
+    /**
+     * Applies GLV endomorphism phi(x, y) = (beta * x, y) to this point.
+     */
+    private void endomorphism() {
+        BigNat x = rm.EC_BN_B;
+        BigNat y = rm.EC_BN_C;
+
+        x.lock();
+        y.lock();
+        readCoordinates(x, y);
+        x.modMult(curve.glvBeta, curve.pBN);
+        writeCoordinates(x, y);
+        x.unlock();
+        y.unlock();
+    }
+
+    /**
+     * Multiplies this point value with provided scalar and stores only the X coordinate of the result into
+     * provided array. No modification of this point is performed and no Y coordinate recovery is done.
+     *
+     * @param scalar          value of scalar for multiplication
+     * @param outBuffer       output array for X coordinate
+     * @param outBufferOffset offset within output array
+     * @return length of X coordinate (in bytes)
+     */
+    public short multiplyX(BigNat scalar, byte[] outBuffer, short outBufferOffset) {
+        curve.rehydrate();
+        if (isSwMultiplication()) {
+            return ladderX(scalar, outBuffer, outBufferOffset);
+        }
+        // if (rm.ecMultKA.getAlgorithm() == KeyAgreement.ALG_EC_SVDP_DH_PLAIN_XY) {
+        if (rm.ecMultKA.getAlgorithm() == (byte) 6) {
+            byte[] pointBuffer = rm.POINT_ARRAY_A;
+
+            rm.lock(rm.POINT_ARRAY_A_LOCK);
+            multXYKA(scalar, pointBuffer, (short) 0);
+            Util.arrayCopyNonAtomic(pointBuffer, (short) 1, outBuffer, outBufferOffset, curve.COORD_SIZE);
+            rm.unlock(rm.POINT_ARRAY_A_LOCK);
+            return curve.COORD_SIZE;
+        }
+        // if (rm.ecMultKA.getAlgorithm() == KeyAgreement.ALG_EC_SVDP_DH_PLAIN) {
+        if (rm.ecMultKA.getAlgorithm() == (byte) 3) {
+            return multXKA(scalar, outBuffer, outBufferOffset);
+        }
+        ISOException.throwIt(ReturnCodes.SW_OPERATION_NOT_SUPPORTED);
+        return 0; // unreachable
+    }
+
+    /**
+     * Computes X coordinate of scalar multiple of this point via x-only Montgomery ladder in projective (X:Z)
+     * coordinates. No modification of this point is performed.
+     *
+     * @param scalar          value of scalar for multiplication
+     * @param outBuffer       output array for X coordinate
+     * @param outBufferOffset offset within output array
+     * @return length of X coordinate (in bytes)
+     */
+    private short ladderX(BigNat scalar, byte[] outBuffer, short outBufferOffset) {
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+        byte[] scalarBuffer = rm.ARRAY_B;
+        BigNat x0 = rm.EC_BN_B;
+        BigNat z0 = rm.EC_BN_C;
+        BigNat x1 = rm.EC_BN_D;
+        BigNat z1 = rm.EC_BN_E;
+
+        rm.lock(rm.ARRAY_B_LOCK);
+        short scalarLen = scalar.copyToByteArray(scalarBuffer, (short) 0);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        getW(pointBuffer, (short) 0);
+
+        // R0 = P, R1 = 2P
+        x0.lock();
+        x0.setSize(curve.COORD_SIZE);
+        x0.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
+        z0.lock();
+        z0.setSize(curve.COORD_SIZE);
+        z0.setValue((byte) 1);
+        x1.lock();
+        x1.clone(x0);
+        z1.lock();
+        z1.clone(z0);
+        ladderDouble(x1, z1);
+
+        boolean started = false;
+        for (short i = 0; i < scalarLen; i++) {
+            for (short j = 7; j >= 0; j--) {
+                boolean bit = (byte) ((scalarBuffer[i] >> j) & 1) != 0;
+                if (!started) {
+                    started = bit;
+                } else if (bit) {
+                    ladderAdd(x0, z0, x1, z1, pointBuffer);
+                    ladderDouble(x1, z1);
+                } else {
+                    ladderAdd(x1, z1, x0, z0, pointBuffer);
+                    ladderDouble(x0, z0);
+                }
+            }
+        }
+        x1.unlock();
+        z1.unlock();
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+        rm.unlock(rm.ARRAY_B_LOCK);
+
+        if (!started || z0.isZero()) {
+            ISOException.throwIt(ReturnCodes.SW_ECPOINT_INFINITY);
+        }
+        z0.modInv(curve.pBN);
+        x0.modMult(z0, curve.pBN);
+        z0.unlock();
+        x0.prependZeros(curve.COORD_SIZE, outBuffer, outBufferOffset);
+        x0.unlock();
+        return curve.COORD_SIZE;
+    }
+
+    /**
+     * Differential addition of x-only Montgomery ladder. Computes (xa:za) = (xa:za) + (xb:zb), where the
+     * difference of the two points equals this point.
+     * X3 = (XaXb - aZaZb)^2 - 4bZaZb(XaZb + XbZa), Z3 = x(XaZb - XbZa)^2
+     *
+     * @param pointBuffer buffer with this point in uncompressed form
+     */
+    private void ladderAdd(BigNat xa, BigNat za, BigNat xb, BigNat zb, byte[] pointBuffer) {
+        BigNat t1 = rm.EC_BN_A;
+        BigNat t2 = rm.EC_BN_F;
+        BigNat t3 = rm.EC_BN_G;
+
+        t1.lock();
+        t1.clone(xa);
+        t1.modMult(zb, curve.pBN);
+        t2.lock();
+        t2.clone(xb);
+        t2.modMult(za, curve.pBN);
+        t3.lock();
+        t3.clone(t1);
+        t3.modAdd(t2, curve.pBN);
+        t1.modSub(t2, curve.pBN);
+        t1.modSq(curve.pBN);
+        t2.setSize(curve.COORD_SIZE);
+        t2.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
+        t1.modMult(t2, curve.pBN);
+
+        t2.clone(za);
+        t2.modMult(zb, curve.pBN);
+        t3.modMult(t2, curve.pBN);
+        t3.modMult(curve.bBN, curve.pBN);
+        t3.modAdd(t3, curve.pBN);
+        t3.modAdd(t3, curve.pBN);
+
+        xa.modMult(xb, curve.pBN);
+        if (curve.A_SHAPE == ECCurve.A_GENERIC) {
+            t2.modMult(curve.aBN, curve.pBN);
+            xa.modSub(t2, curve.pBN);
+        } else if (curve.A_SHAPE == ECCurve.A_MINUS_THREE) {
+            xa.modAdd(t2, curve.pBN);
+            xa.modAdd(t2, curve.pBN);
+            xa.modAdd(t2, curve.pBN);
+        }
+        t2.unlock();
+        xa.modSq(curve.pBN);
+        xa.modSub(t3, curve.pBN);
+        t3.unlock();
+        za.clone(t1);
+        t1.unlock();
+    }
+
+    /**
+     * Doubling of x-only Montgomery ladder. Computes (x:z) = 2 * (x:z).
+     * X2 = (X^2 - aZ^2)^2 - 8bXZ^3, Z2 = 4Z(X^3 + aXZ^2 + bZ^3)
+     */
+    private void ladderDouble(BigNat x, BigNat z) {
+        BigNat t1 = rm.EC_BN_A;
+        BigNat t2 = rm.EC_BN_F;
+        BigNat t3 = rm.EC_BN_G;
+
+        t1.lock();
+        t1.clone(x);
+        t1.modSq(curve.pBN);
+        t2.lock();
+        t2.clone(z);
+        t2.modSq(curve.pBN);
+        t3.lock();
+        // t1 = X^2 - aZ^2, t3 = X^2 + aZ^2
+        if (curve.A_SHAPE == ECCurve.A_GENERIC) {
+            t3.clone(t2);
+            t3.modMult(curve.aBN, curve.pBN);
+            t1.modSub(t3, curve.pBN);
+            t3.modAdd(t3, curve.pBN);
+            t3.modAdd(t1, curve.pBN);
+        } else {
+            t3.clone(t1);
+            if (curve.A_SHAPE == ECCurve.A_MINUS_THREE) {
+                t3.modSub(t2, curve.pBN);
+                t3.modSub(t2, curve.pBN);
+                t3.modSub(t2, curve.pBN);
+                t1.modAdd(t2, curve.pBN);
+                t1.modAdd(t2, curve.pBN);
+                t1.modAdd(t2, curve.pBN);
+            }
+        }
+        t3.modMult(x, curve.pBN);
+        t2.modMult(z, curve.pBN);
+        t2.modMult(curve.bBN, curve.pBN);
+        t3.modAdd(t2, curve.pBN);
+        t2.modMult(x, curve.pBN);
+        t2.modAdd(t2, curve.pBN);
+        t2.modAdd(t2, curve.pBN);
+        t2.modAdd(t2, curve.pBN);
+
+        x.clone(t1);
+        t1.unlock();
+        x.modSq(curve.pBN);
+        x.modSub(t2, curve.pBN);
+        t2.unlock();
+        z.modMult(t3, curve.pBN);
+        t3.unlock();
+        z.modAdd(z, curve.pBN);
+        z.modAdd(z, curve.pBN);
+    }
+
     /**
      * Multiply this point by a given scalar and add another point to the result.
      *
@@ -394,12 +1101,13 @@ public class ECPoint {
      * @param point the other point
      */
     public void multAndAdd(BigNat scalar, ECPoint point) {
+        curve.rehydrate();
         if (OperationSupport.getInstance().EC_HW_ADD) {
             byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-            rm.lock(pointBuffer);
+            rm.lock(rm.POINT_ARRAY_A_LOCK);
             setW(pointBuffer, (short) 0, multAndAddKA(scalar, point, pointBuffer, (short) 0));
-            rm.unlock(pointBuffer);
+            rm.unlock(rm.POINT_ARRAY_A_LOCK);
         } else {
             multiplication(scalar);
             add(point);
@@ -417,16 +1125,16 @@ public class ECPoint {
     private short multAndAddKA(BigNat scalar, ECPoint point, byte[] outBuffer, short outBufferOffset) {
         byte[] pointBuffer = rm.POINT_ARRAY_B;
 
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_B_LOCK);
         short len = getW(pointBuffer, (short) 0);
-        curve.disposablePriv.setG(pointBuffer, (short) 0, len);
+        curve.setDisposableG(pointBuffer, (short) 0, len);
         len = scalar.copyToByteArray(pointBuffer, (short) 0);
-        curve.disposablePriv.setS(pointBuffer, (short) 0, len);
-        rm.ecAddKA.init(curve.disposablePriv);
+        curve.setDisposableS(pointBuffer, (short) 0, len);
+        rm.initKeyAgreement(rm.ecAddKA, curve.getDisposablePriv());
 
         len = point.getW(pointBuffer, (short) 0);
         len = rm.ecAddKA.generateSecret(pointBuffer, (short) 0, len, outBuffer, outBufferOffset);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_B_LOCK);
         return len;
     }
 
@@ -436,12 +1144,13 @@ public class ECPoint {
      * @param scalar value of scalar for multiplication
      */
     public void multXY(BigNat scalar) {
+        curve.rehydrate();
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
         short len = multXYKA(scalar, pointBuffer, (short) 0);
         setW(pointBuffer, (short) 0, len);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
     }
 
     /**
@@ -455,80 +1164,105 @@ public class ECPoint {
      * @return length of resulting value (in bytes)
      */
     public short multXYKA(BigNat scalar, byte[] outBuffer, short outBufferOffset) {
+        curve.rehydrate();
         byte[] pointBuffer = rm.POINT_ARRAY_B;
 
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_B_LOCK);
         short len = scalar.copyToByteArray(pointBuffer, (short) 0);
-        curve.disposablePriv.setS(pointBuffer, (short) 0, len);
-        rm.ecMultKA.init(curve.disposablePriv);
+        curve.setDisposableS(pointBuffer, (short) 0, len);
+        rm.initKeyAgreement(rm.ecMultKA, curve.getDisposablePriv());
 
         len = getW(pointBuffer, (short) 0);
         len = rm.ecMultKA.generateSecret(pointBuffer, (short) 0, len, outBuffer, outBufferOffset);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_B_LOCK);
         return len;
     }
 
     /**
      * Multiply value of this point by provided scalar using X-only key agreement. Stores the result into this point.
+     * The y coordinate of Q = kP is recovered from x coordinates of Q and R = (k+1)P (Okeya-Sakurai):
+     * y_Q = (2b + (a + x_P * x_Q)(x_P + x_Q) - x_R * (x_P - x_Q)^2) / (2 * y_P)
      *
      * @param scalar value of scalar for multiplication
      */
     private void multX(BigNat scalar) {
         byte[] pointBuffer = rm.POINT_ARRAY_A;
-        byte[] resultBuffer = rm.ARRAY_A;
-        BigNat x = rm.EC_BN_B;
-        BigNat ySq = rm.EC_BN_C;
-        BigNat y1 = rm.EC_BN_D;
-        BigNat y2 = rm.EC_BN_B;
+        BigNat scalarNext = rm.EC_BN_A;
+        BigNat numerator = rm.EC_BN_A;
+        BigNat xQ = rm.EC_BN_B;
+        BigNat xR = rm.EC_BN_C;
+        BigNat xP = rm.EC_BN_D;
+        BigNat tmp = rm.EC_BN_E;
 
-        rm.lock(pointBuffer);
-        short len = multXKA(scalar, pointBuffer, (short) 0);
-        x.lock();
-        x.fromByteArray(pointBuffer, (short) 0, len);
-        rm.unlock(pointBuffer);
+        // Scalars not lower than r are reduced first, so that k+1 = r is recognized for any k = -1 mod r
+        scalarNext.lock();
+        scalarNext.clone(scalar);
+        scalarNext.mod(curve.rBN);
+        scalarNext.shrink();
+        scalarNext.resize((short) (scalarNext.length() + 1));
+
+        // x_R = x((k+1)P)
+        scalarNext.increment();
+        scalarNext.shrink();
+        if (scalarNext.length() == curve.rBN.length() && scalarNext.equals(curve.rBN)) { // kP = -P, (k+1)P is the point at infinity
+            scalarNext.unlock();
+            negate();
+            return;
+        }
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        short len = multXKA(scalarNext, pointBuffer, (short) 0);
+        xR.lock();
+        xR.fromByteArray(pointBuffer, (short) 0, len);
+
+        // x_Q = x(kP)
+        scalarNext.decrement();
+        scalarNext.shrink();
+        len = multXKA(scalarNext, pointBuffer, (short) 0);
+        scalarNext.unlock();
+        xQ.lock();
+        xQ.fromByteArray(pointBuffer, (short) 0, len);
 
-        //Y^2 = X^3 + XA + B = x(x^2+A)+B
-        ySq.lock();
-        ySq.clone(x);
-        ySq.modExp(ResourceManager.TWO, curve.pBN);
-        ySq.modAdd(curve.aBN, curve.pBN);
-        ySq.modMult(x, curve.pBN);
-        ySq.modAdd(curve.bBN, curve.pBN);
-        y1.lock();
-        y1.clone(ySq);
-        ySq.unlock();
-        y1.modSqrt(curve.pBN);
-
-        // Prepare for SignVerify
-        rm.lock(pointBuffer);
         getW(pointBuffer, (short) 0);
-        curve.disposablePriv.setG(pointBuffer, (short) 0, curve.POINT_SIZE);
-        curve.disposablePub.setG(pointBuffer, (short) 0, curve.POINT_SIZE);
+        xP.lock();
+        xP.setSize(curve.COORD_SIZE);
+        xP.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
 
-        // Construct public key with <x, y_1>
-        pointBuffer[0] = 0x04;
-        x.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
-        x.unlock();
-        y1.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
+        // x_R * (x_P - x_Q)^2
+        tmp.lock();
+        tmp.clone(xP);
+        tmp.modSub(xQ, curve.pBN);
+        tmp.modSq(curve.pBN);
+        xR.modMult(tmp, curve.pBN);
 
-        // Check if public point <x, y_1> corresponds to the "secret" (i.e., our scalar)
-        rm.lock(resultBuffer);
-        len = scalar.copyToByteArray(resultBuffer, (short) 0);
-        curve.disposablePriv.setS(resultBuffer, (short) 0, len);
-        curve.disposablePub.setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        if (!SignVerifyECDSA(curve.disposablePriv, curve.disposablePub, rm.verifyEcdsa, resultBuffer)) { // If verification fails, then pick the <x, y_2>
-            y2.lock();
-            y2.clone(curve.pBN); // y_2 = p - y_1
-            y2.modSub(y1, curve.pBN);
-            y2.copyToByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE));
-            y2.unlock();
-        }
-        rm.unlock(resultBuffer);
-        y1.unlock();
+        // (a + x_P * x_Q)(x_P + x_Q) + 2b - x_R * (x_P - x_Q)^2
+        tmp.clone(xP);
+        tmp.modAdd(xQ, curve.pBN);
+        numerator.lock();
+        numerator.clone(xP);
+        xP.unlock();
+        numerator.modMult(xQ, curve.pBN);
+        numerator.modAdd(curve.aBN, curve.pBN);
+        numerator.modMult(tmp, curve.pBN);
+        numerator.modAdd(curve.bBN, curve.pBN);
+        numerator.modAdd(curve.bBN, curve.pBN);
+        numerator.modSub(xR, curve.pBN);
+        xR.unlock();
 
+        // y_Q = numerator / (2 * y_P)
+        tmp.setSize(curve.COORD_SIZE);
+        tmp.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
+        tmp.modAdd(tmp, curve.pBN);
+        tmp.modInv(curve.pBN);
+        numerator.modMult(tmp, curve.pBN);
+        tmp.unlock();
 
+        pointBuffer[0] = 0x04;
+        xQ.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
+        xQ.unlock();
+        numerator.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
+        numerator.unlock();
         setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
     }
 
     /**
@@ -544,15 +1278,14 @@ public class ECPoint {
     private short multXKA(BigNat scalar, byte[] outBuffer, short outBufferOffset) {
         byte[] pointBuffer = rm.POINT_ARRAY_B;
         // NOTE: potential problem on real cards (j2e) - when small scalar is used (e.g., BigNat.TWO), operation sometimes freezes
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_B_LOCK);
         short len = scalar.copyToByteArray(pointBuffer, (short) 0);
-        curve.disposablePriv.setS(pointBuffer, (short) 0, len);
-
-        rm.ecMultKA.init(curve.disposablePriv);
+        curve.setDisposableS(pointBuffer, (short) 0, len);
+        rm.initKeyAgreement(rm.ecMultKA, curve.getDisposablePriv());
 
         len = getW(pointBuffer, (short) 0);
         rm.ecMultKA.generateSecret(pointBuffer, (short) 0, len, outBuffer, outBufferOffset);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_B_LOCK);
         // Return always length of whole coordinate X instead of len - some real cards returns shorter value equal to SHA-1 output size although PLAIN results is filled into buffer (GD60) 
         return curve.COORD_SIZE;
     }
@@ -562,19 +1295,17 @@ public class ECPoint {
      * The operation will dump point into uncompressed_point_arr, negate Y and restore back
      */
     public void negate() {
-        byte[] pointBuffer = rm.POINT_ARRAY_A;
+        curve.rehydrate();
+        BigNat x = rm.EC_BN_B;
         BigNat y = rm.EC_BN_C;
 
+        x.lock();
         y.lock();
-        rm.lock(pointBuffer);
-        point.getW(pointBuffer, (short) 0);
-        y.setSize(curve.COORD_SIZE);
-        y.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
+        readCoordinates(x, y);
         y.modNegate(curve.pBN);
-        y.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
+        writeCoordinates(x, y);
+        x.unlock();
         y.unlock();
-        setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        rm.unlock(pointBuffer);
     }
 
     /**
@@ -585,6 +1316,7 @@ public class ECPoint {
      * @param xLen    length of the X coordinate
      */
     public void fromX(byte[] xCoord, short xOffset, short xLen) {
+        curve.rehydrate();
         BigNat x = rm.EC_BN_F;
 
         x.lock();
@@ -600,30 +1332,46 @@ public class ECPoint {
      * @param x the x coordinate
      */
     private void fromX(BigNat x) {
-        BigNat ySq = rm.EC_BN_C;
         BigNat y = rm.EC_BN_D;
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        //Y^2 = X^3 + XA + B = x(x^2+A)+B
-        ySq.lock();
-        ySq.clone(x);
-        ySq.modSq(curve.pBN);
-        ySq.modAdd(curve.aBN, curve.pBN);
-        ySq.modMult(x, curve.pBN);
-        ySq.modAdd(curve.bBN, curve.pBN);
-        y.lock();
-        y.clone(ySq);
-        ySq.unlock();
-        y.modSqrt(curve.pBN);
-
         // Construct public key with <x, y_1>
-        rm.lock(pointBuffer);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
         pointBuffer[0] = 0x04;
         x.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
+        y.lock();
+        computeY(x, pointBuffer, (short) 1, y);
         y.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
         y.unlock();
         setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+    }
+
+    /**
+     * Computes one of the two Y coordinates corresponding to provided X coordinate. The result is looked up
+     * in the cache of recovered coordinates first, so the square root is computed only on cache miss.
+     *
+     * @param x       the x coordinate
+     * @param xBuffer array with the x coordinate of length COORD_SIZE (cache key)
+     * @param xOffset offset of the x coordinate within xBuffer
+     * @param y       output for the y coordinate
+     */
+    private void computeY(BigNat x, byte[] xBuffer, short xOffset, BigNat y) {
+        short cached = rm.findY(curve, xBuffer, xOffset, curve.COORD_SIZE);
+        if (cached >= 0) {
+            y.setSize(curve.COORD_SIZE);
+            y.fromByteArray(rm.Y_CACHE, cached, curve.COORD_SIZE);
+            return;
+        }
+
+        //Y^2 = X^3 + XA + B = x(x^2+A)+B
+        y.clone(x);
+        y.modSq(curve.pBN);
+        y.modAdd(curve.aBN, curve.pBN);
+        y.modMult(x, curve.pBN);
+        y.modAdd(curve.bBN, curve.pBN);
+        y.modSqrt(curve.pBN);
+        rm.storeY(curve, xBuffer, xOffset, curve.COORD_SIZE, y);
     }
 
     /**
@@ -632,12 +1380,17 @@ public class ECPoint {
      * @return true if Y coordinate is even; false otherwise
      */
     public boolean isYEven() {
+        curve.rehydrate();
+        if (isCacheValid()) {
+            normalize();
+            return !cachedY.isOdd();
+        }
         byte[] pointBuffer = rm.POINT_ARRAY_A;
 
-        rm.lock(pointBuffer);
-        point.getW(pointBuffer, (short) 0);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        getW(pointBuffer, (short) 0);
         boolean result = pointBuffer[(short) (curve.POINT_SIZE - 1)] % 2 == 0;
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
         return result;
     }
 
@@ -648,6 +1401,7 @@ public class ECPoint {
      * @return true if both point are exactly equal (same length, same value), false otherwise
      */
     public boolean isEqual(ECPoint other) {
+        curve.rehydrate();
         if (length() != other.length()) {
             return false;
         }
@@ -657,15 +1411,15 @@ public class ECPoint {
         byte[] pointBuffer = rm.POINT_ARRAY_A;
         byte[] hashBuffer = rm.HASH_ARRAY;
 
-        rm.lock(pointBuffer);
-        rm.lock(hashBuffer);
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        rm.lock(rm.HASH_ARRAY_LOCK);
         short len = getW(pointBuffer, (short) 0);
         rm.hashEngine.doFinal(pointBuffer, (short) 0, len, hashBuffer, (short) 0);
         len = other.getW(pointBuffer, (short) 0);
         len = rm.hashEngine.doFinal(pointBuffer, (short) 0, len, pointBuffer, (short) 0);
         boolean bResult = Util.arrayCompare(hashBuffer, (short) 0, pointBuffer, (short) 0, len) == 0;
-        rm.unlock(hashBuffer);
-        rm.unlock(pointBuffer);
+        rm.unlock(rm.HASH_ARRAY_LOCK);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
 
         return bResult;
     }
@@ -689,6 +1443,7 @@ public class ECPoint {
      * @return true if the point was compressed; false otherwise
      */
     public boolean decode(byte[] point, short offset, short length) {
+        curve.rehydrate();
         if(length == (short) (1 + 2 * curve.COORD_SIZE) && point[offset] == 0x04) {
             setW(point, offset, length);
             return false;
@@ -701,17 +1456,10 @@ public class ECPoint {
 
             x.lock();
             x.fromByteArray(point, (short) (offset + 1), curve.COORD_SIZE);
-
-            //Y^2 = X^3 + XA + B = x(x^2+A)+B
             y.lock();
-            y.clone(x);
-            y.modSq(curve.pBN);
-            y.modAdd(curve.aBN, curve.pBN);
-            y.modMult(x, curve.pBN);
-            y.modAdd(curve.bBN, curve.pBN);
-            y.modSqrt(curve.pBN);
-
-            rm.lock(pointBuffer);
+            computeY(x, point, (short) (offset + 1), y);
+
+            rm.lock(rm.POINT_ARRAY_A_LOCK);
             pointBuffer[0] = 0x04;
             x.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
             x.unlock();
@@ -728,13 +1476,319 @@ public class ECPoint {
             y.unlock();
             p.unlock();
             setW(pointBuffer, (short) 0, curve.POINT_SIZE);
-            rm.unlock(pointBuffer);
+            rm.unlock(rm.POINT_ARRAY_A_LOCK);
             return true;
         }
         ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALID);
         return true; // unreachable
     }
 
+    /**
+     * Decode SEC1-encoded point, check that it lies on the curve and load it into this. Uncompressed points are
+     * checked before they are set. Throws SW_ECPOINT_INVALID if the point is not valid.
+     *
+     * @param point array containing SEC1-encoded point
+     * @param offset offset within the output buffer
+     * @param length length of the encoded point
+     * @return true if the point was compressed; false otherwise
+     */
+    public boolean decodeValidated(byte[] point, short offset, short length) {
+        curve.rehydrate();
+        if (length == (short) (1 + 2 * curve.COORD_SIZE) && point[offset] == 0x04) {
+            BigNat x = rm.EC_BN_B;
+            BigNat y = rm.EC_BN_C;
+
+            x.lock();
+            x.setSize(curve.COORD_SIZE);
+            x.fromByteArray(point, (short) (offset + 1), curve.COORD_SIZE);
+            y.lock();
+            y.setSize(curve.COORD_SIZE);
+            y.fromByteArray(point, (short) (offset + 1 + curve.COORD_SIZE), curve.COORD_SIZE);
+            boolean valid = isOnCurve(x, y);
+            x.unlock();
+            y.unlock();
+            if (!valid) {
+                ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALID);
+            }
+            setW(point, offset, length);
+            return false;
+        }
+        boolean compressed = decode(point, offset, length);
+        if (!isOnCurve()) {
+            ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALID);
+        }
+        return compressed;
+    }
+
+    /**
+     * Checks whether this point satisfies the curve equation y^2 = x^3 + ax + b.
+     *
+     * @return true if this point lies on the curve
+     */
+    public boolean isOnCurve() {
+        curve.rehydrate();
+        BigNat x = rm.EC_BN_B;
+        BigNat y = rm.EC_BN_C;
+
+        x.lock();
+        y.lock();
+        readCoordinates(x, y);
+        boolean result = isOnCurve(x, y);
+        x.unlock();
+        y.unlock();
+        return result;
+    }
+
+    /**
+     * Checks whether provided affine coordinates satisfy the curve equation. The right side is evaluated as
+     * (x^2 + a) * x + b, the addition of a is skipped or replaced by subtraction of 3 for special curve shapes.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate, overwritten
+     * @return true if both coordinates are reduced and satisfy the curve equation
+     */
+    private boolean isOnCurve(BigNat x, BigNat y) {
+        if (!x.isLesser(curve.pBN) || !y.isLesser(curve.pBN)) {
+            return false;
+        }
+        BigNat rhs = rm.EC_BN_D;
+
+        rhs.lock();
+        rhs.clone(x);
+        rhs.modSq(curve.pBN);
+        if (curve.A_SHAPE == ECCurve.A_GENERIC) {
+            rhs.modAdd(curve.aBN, curve.pBN);
+        } else if (curve.A_SHAPE == ECCurve.A_MINUS_THREE) {
+            rhs.modSub(ResourceManager.THREE, curve.pBN);
+        }
+        rhs.modMult(x, curve.pBN);
+        rhs.modAdd(curve.bBN, curve.pBN);
+        y.modSq(curve.pBN);
+        boolean result = y.length() == rhs.length() && y.equals(rhs);
+        rhs.unlock();
+        return result;
+    }
+
+    /**
+     * Hashes provided message to a point of the curve and stores the result into this. Implements encode_to_curve
+     * of RFC 9380 using expand_message_xmd with SHA-256 and the simplified SWU map, followed by the isogeny map if
+     * the curve has one. Unlike try-and-increment, the cost is constant: one inversion and one square root, plus
+     * one inversion for the isogeny map. The curve must be prepared by {@code ECCurve.setSSWU()}.
+     *
+     * @param msg array with the message
+     * @param msgOffset offset of the message
+     * @param msgLength length of the message
+     * @param dst array with the domain separation tag
+     * @param dstOffset offset of the domain separation tag
+     * @param dstLength length of the domain separation tag, at most 255 bytes
+     */
+    public void encodeToCurve(byte[] msg, short msgOffset, short msgLength, byte[] dst, short dstOffset, short dstLength) {
+        curve.rehydrate();
+        BigNat u = rm.EC_BN_A;
+        BigNat x = rm.EC_BN_B;
+        BigNat gx = rm.EC_BN_C;
+        BigNat y = rm.EC_BN_D;
+        BigNat tv = rm.EC_BN_E;
+        BigNat s = rm.EC_BN_G;
+        BigNat p = curve.pBN;
+        byte[] uniformBuffer = rm.POINT_ARRAY_A;
+        short uniformLength = (short) (curve.COORD_SIZE + 16);
+
+        // u = hash_to_field(msg), 128 extra bits make the bias of the reduction negligible
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        expandMessage(msg, msgOffset, msgLength, dst, dstOffset, dstLength, uniformBuffer, uniformLength);
+        u.lock();
+        u.fromByteArray(uniformBuffer, (short) 0, uniformLength);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+        u.mod(p);
+        u.setSize(curve.COORD_SIZE);
+
+        // s = Z * u^2, tv = Z^2 * u^4 + Z * u^2
+        s.lock();
+        s.clone(u);
+        s.modSq(p);
+        s.modMult(curve.sswuZ, p);
+        tv.lock();
+        tv.clone(s);
+        tv.modAdd(ResourceManager.ONE_COORD, p);
+        tv.modMult(s, p);
+
+        // x1 = -B / A * (1 + 1 / tv), or B / (Z * A) if tv = 0
+        x.lock();
+        if (tv.isZero()) {
+            x.clone(curve.sswuX1Exceptional);
+        } else {
+            tv.modInv(p);
+            tv.modAdd(ResourceManager.ONE_COORD, p);
+            x.clone(curve.sswuX1);
+            x.modMult(tv, p);
+        }
+
+        // gx1 = (x1^2 + A) * x1 + B, y1 = gx1^((p + 1) / 4) is its square root if there is one
+        gx.lock();
+        gx.clone(x);
+        gx.modSq(p);
+        gx.modAdd(curve.sswuA, p);
+        gx.modMult(x, p);
+        gx.modAdd(curve.sswuB, p);
+        y.lock();
+        y.clone(gx);
+        y.modExp(curve.sswuSqrtExponent, p);
+        tv.clone(y);
+        tv.modSq(p);
+        if (tv.length() != gx.length() || !tv.equals(gx)) {
+            // gx2 = (Z * u^2)^3 * gx1, so x2 = Z * u^2 * x1 and y2 = sqrt(-Z) * Z * u^2 * u * y1
+            x.modMult(s, p);
+            y.modMult(curve.sswuSqrtMinusZ, p);
+            y.modMult(s, p);
+            y.modMult(u, p);
+        }
+        gx.unlock();
+        tv.unlock();
+        s.unlock();
+        if (u.isOdd() != y.isOdd()) {
+            y.modNegate(p);
+        }
+        u.unlock();
+
+        if (curve.sswuIsogeny != null) {
+            isogenyMap(x, y);
+        }
+        writeCoordinates(x, y);
+        x.unlock();
+        y.unlock();
+    }
+
+    /**
+     * Expands provided message into uniform bytes using expand_message_xmd of RFC 9380 with SHA-256. The output is
+     * produced in whole digest blocks, so the output buffer must fit the length rounded up to the digest length.
+     *
+     * @param msg array with the message
+     * @param msgOffset offset of the message
+     * @param msgLength length of the message
+     * @param dst array with the domain separation tag
+     * @param dstOffset offset of the domain separation tag
+     * @param dstLength length of the domain separation tag, at most 255 bytes
+     * @param output output buffer
+     * @param outputLength requested number of bytes
+     */
+    private void expandMessage(byte[] msg, short msgOffset, short msgLength, byte[] dst, short dstOffset, short dstLength,
+                               byte[] output, short outputLength) {
+        MessageDigest hash = rm.hashEngine;
+        byte[] b0 = rm.HASH_ARRAY;
+        short blockLength = hash.getLength();
+        short blocks = (short) ((short) (outputLength + blockLength - 1) / blockLength);
+        if (dstLength > 255 || (short) (blocks * blockLength) > (short) output.length) {
+            ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALIDLENGTH);
+        }
+
+        // b0 = H(Z_pad || msg || I2OSP(len_in_bytes, 2) || I2OSP(0, 1) || DST || I2OSP(len(DST), 1)), Z_pad has 64 zero bytes
+        rm.lock(rm.HASH_ARRAY_LOCK);
+        Util.arrayFillNonAtomic(b0, (short) 0, blockLength, (byte) 0);
+        hash.reset();
+        hash.update(b0, (short) 0, blockLength);
+        hash.update(b0, (short) 0, blockLength);
+        hash.update(msg, msgOffset, msgLength);
+        b0[0] = (byte) (outputLength >> 8);
+        b0[1] = (byte) outputLength;
+        hash.update(b0, (short) 0, (short) 3);
+        hash.update(dst, dstOffset, dstLength);
+        b0[0] = (byte) dstLength;
+        hash.doFinal(b0, (short) 0, (short) 1, b0, (short) 0);
+
+        // b_i = H(strxor(b0, b_(i - 1)) || I2OSP(i, 1) || DST || I2OSP(len(DST), 1)), b_1 is hashed from b0 only
+        byte i = 1;
+        for (short block = 0; block < outputLength; block += blockLength) {
+            if (block == 0) {
+                Util.arrayCopyNonAtomic(b0, (short) 0, output, (short) 0, blockLength);
+            } else {
+                for (short j = 0; j < blockLength; j++) {
+                    output[(short) (block + j)] = (byte) (b0[j] ^ output[(short) (block - blockLength + j)]);
+                }
+            }
+            hash.update(output, block, blockLength);
+            output[block] = i;
+            hash.update(output, block, (short) 1);
+            hash.update(dst, dstOffset, dstLength);
+            output[block] = (byte) dstLength;
+            hash.doFinal(output, block, (short) 1, output, block);
+            i++;
+        }
+        rm.unlock(rm.HASH_ARRAY_LOCK);
+    }
+
+    /**
+     * Applies the isogeny map set by {@code ECCurve.setSSWU()} to provided affine coordinates. Numerators and
+     * denominators are evaluated by Horner's rule and both denominators are inverted at once.
+     *
+     * @param x X coordinate, overwritten by the mapped X coordinate
+     * @param y Y coordinate, overwritten by the mapped Y coordinate
+     */
+    private void isogenyMap(BigNat x, BigNat y) {
+        BigNat xNum = rm.EC_BN_A;
+        BigNat xDen = rm.EC_BN_C;
+        BigNat yNum = rm.EC_BN_E;
+        BigNat yDen = rm.EC_BN_G;
+        BigNat k = rm.EC_BN_F;
+        BigNat p = curve.pBN;
+
+        xNum.lock();
+        xDen.lock();
+        yNum.lock();
+        yDen.lock();
+        k.lock();
+        isogenyPolynomial(xNum, x, k, (short) 0, (short) 4, false);
+        isogenyPolynomial(xDen, x, k, (short) 4, (short) 2, true);
+        isogenyPolynomial(yNum, x, k, (short) 6, (short) 4, false);
+        isogenyPolynomial(yDen, x, k, (short) 10, (short) 3, true);
+
+        // k = 1 / (x_den * y_den)
+        k.clone(xDen);
+        k.modMult(yDen, p);
+        k.modInv(p);
+        x.clone(xNum);
+        x.modMult(yDen, p);
+        x.modMult(k, p);
+        y.modMult(yNum, p);
+        y.modMult(xDen, p);
+        y.modMult(k, p);
+        xNum.unlock();
+        xDen.unlock();
+        yNum.unlock();
+        yDen.unlock();
+        k.unlock();
+    }
+
+    /**
+     * Evaluates a polynomial with coefficients taken from the isogeny map of the curve using Horner's rule.
+     *
+     * @param result output for the value of the polynomial
+     * @param x point at which the polynomial is evaluated
+     * @param k temporary for coefficients
+     * @param first index of the constant coefficient
+     * @param count number of stored coefficients
+     * @param monic true if the polynomial has an implicit leading coefficient 1
+     */
+    private void isogenyPolynomial(BigNat result, BigNat x, BigNat k, short first, short count, boolean monic) {
+        short i = (short) (first + count - 1);
+        if (monic) {
+            result.clone(x);
+        } else {
+            result.fromByteArray(curve.sswuIsogeny, (short) (i * curve.COORD_SIZE), curve.COORD_SIZE);
+            result.modMult(x, curve.pBN);
+            i--;
+        }
+        while (true) {
+            k.fromByteArray(curve.sswuIsogeny, (short) (i * curve.COORD_SIZE), curve.COORD_SIZE);
+            result.modAdd(k, curve.pBN);
+            if (i == first) {
+                break;
+            }
+            result.modMult(x, curve.pBN);
+            i--;
+        }
+    }
+
     /**
      * Encode this point into the output buffer.
      *
@@ -744,6 +1798,7 @@ public class ECPoint {
      * @return length of output point
      */
     public short encode(byte[] output, short offset, boolean compressed) {
+        curve.rehydrate();
         getW(output, offset);
 
         if(compressed) {
@@ -759,16 +1814,9 @@ public class ECPoint {
             BigNat p = rm.EC_BN_E;
             x.lock();
             x.fromByteArray(output, (short) (offset + 1), curve.COORD_SIZE);
-
-            //Y^2 = X^3 + XA + B = x(x^2+A)+B
             y.lock();
-            y.clone(x);
-            y.modSq(curve.pBN);
-            y.modAdd(curve.aBN, curve.pBN);
-            y.modMult(x, curve.pBN);
+            computeY(x, output, (short) (offset + 1), y);
             x.unlock();
-            y.modAdd(curve.bBN, curve.pBN);
-            y.modSqrt(curve.pBN);
             p.lock();
             boolean odd = y.isOdd();
             if ((!odd && output[offset] != (byte) 0x02) || (odd && output[offset] != (byte) 0x03)) {
@@ -787,62 +1835,451 @@ public class ECPoint {
 
 
 
+    /**
+     * Converts provided points to affine coordinates and writes each of them into its point object.
+     * Points held in Jacobian coordinates are normalized together using simultaneous inversion, so only one
+     * modular inversion is computed per batch instead of one per point. All points must share the same curve.
+     *
+     * @param points array of points
+     * @param n number of points from the beginning of the array to normalize
+     */
+    public static void normalizeBatch(ECPoint[] points, short n) {
+        if (n <= 0) {
+            return;
+        }
+        ECCurve curve = points[0].curve;
+        curve.rehydrate();
+        ResourceManager rm = curve.rm;
+        byte[] prefixBuffer = rm.ARRAY_B;
+        BigNat acc = rm.EC_BN_B;
+        BigNat zInv = rm.EC_BN_C;
+        short slots = (short) (prefixBuffer.length / curve.COORD_SIZE);
+
+        rm.lock(rm.ARRAY_B_LOCK);
+        acc.lock();
+        zInv.lock();
+        short start = 0;
+        while (start < n) {
+            // acc = Z_1 * ... * Z_j, partial products are stored into prefixBuffer
+            acc.setSize(curve.COORD_SIZE);
+            acc.setValue((byte) 1);
+            short count = 0;
+            short end = start;
+            while (end < n && count < slots) {
+                ECPoint point = points[end];
+                if (point.isProjective()) {
+                    acc.modMult(point.cachedZ, curve.pBN);
+                    acc.prependZeros(curve.COORD_SIZE, prefixBuffer, (short) (count * curve.COORD_SIZE));
+                    count++;
+                }
+                end++;
+            }
+            if (count > 0) {
+                acc.modInv(curve.pBN);
+                for (short i = (short) (end - 1); i >= start; i--) {
+                    ECPoint point = points[i];
+                    if (!point.isProjective()) {
+                        continue;
+                    }
+                    count--;
+                    // Z_i^-1 = (Z_1 * ... * Z_i)^-1 * (Z_1 * ... * Z_i-1)
+                    if (count > 0) {
+                        zInv.setSize(curve.COORD_SIZE);
+                        zInv.fromByteArray(prefixBuffer, (short) ((short) (count - 1) * curve.COORD_SIZE), curve.COORD_SIZE);
+                        zInv.modMult(acc, curve.pBN);
+                    } else {
+                        zInv.clone(acc);
+                    }
+                    acc.modMult(point.cachedZ, curve.pBN);
+                    point.cachedZ.copy(zInv);
+                    point.scaleByInverseZ();
+                }
+            }
+            start = end;
+        }
+        zInv.unlock();
+        acc.unlock();
+        rm.unlock(rm.ARRAY_B_LOCK);
+
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        for (short i = 0; i < n; i++) {
+            if (points[i].isCacheDirty()) {
+                points[i].flushCache(pointBuffer, (short) 0);
+            }
+        }
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+    }
+
+    /**
+     * Returns true if cached coordinates correspond to the current point value.
+     */
+    private boolean isCacheValid() {
+        return cacheState != null && cacheState[CACHE_VALID];
+    }
+
+    /**
+     * Returns true if cached coordinates were not yet written into the point object.
+     */
+    private boolean isCacheDirty() {
+        return cacheState != null && cacheState[CACHE_DIRTY];
+    }
+
+    /**
+     * Drops cached coordinates after the point object was changed directly.
+     */
+    private void invalidateCache() {
+        if (cacheState != null) {
+            cacheState[CACHE_VALID] = false;
+            cacheState[CACHE_DIRTY] = false;
+            cacheState[CACHE_PROJECTIVE] = false;
+        }
+    }
+
+    /**
+     * Converts cached Jacobian coordinates into affine ones, x = X / Z^2 and y = Y / Z^3.
+     * Only the cached BigNats are modified, so this may be called while EC temporaries are locked.
+     */
+    private void normalize() {
+        if (!cacheState[CACHE_PROJECTIVE]) {
+            return;
+        }
+        cachedZ.modInv(curve.pBN);
+        scaleByInverseZ();
+    }
+
+    /**
+     * Returns true if this point is cached in Jacobian coordinates with Z different from one.
+     */
+    private boolean isProjective() {
+        return cacheState != null && cacheState[CACHE_PROJECTIVE];
+    }
+
+    /**
+     * Finishes normalization of cached coordinates when cachedZ already holds the inverse of Z.
+     */
+    private void scaleByInverseZ() {
+        cachedY.modMult(cachedZ, curve.pBN);
+        cachedZ.modSq(curve.pBN);
+        cachedX.modMult(cachedZ, curve.pBN);
+        cachedY.modMult(cachedZ, curve.pBN);
+        cachedZ.setValue((byte) 1);
+        cacheState[CACHE_PROJECTIVE] = false;
+    }
+
+    /**
+     * Doubles this point in cached Jacobian coordinates. No modular inversion is computed, the result is
+     * normalized only when its affine coordinates are needed.
+     * M = 3X^2 + aZ^4, S = 4XY^2, X2 = M^2 - 2S, Y2 = M(S - X2) - 8Y^4, Z2 = 2YZ
+     */
+    private void jacobianDouble() {
+        BigNat x = rm.EC_BN_B;
+        BigNat y = rm.EC_BN_C;
+        BigNat z = rm.EC_BN_D;
+        BigNat m = rm.EC_BN_E;
+        BigNat s = rm.EC_BN_A;
+        BigNat t = rm.EC_BN_G;
+
+        x.lock();
+        y.lock();
+        z.lock();
+        loadJacobian(x, y, z);
+
+        // M = 3X^2 + aZ^4, or 3(X - Z^2)(X + Z^2) if a = -3
+        m.lock();
+        t.lock();
+        if (curve.A_SHAPE == ECCurve.A_MINUS_THREE) {
+            t.clone(z);
+            t.modSq(curve.pBN);
+            m.clone(x);
+            m.modSub(t, curve.pBN);
+            t.modAdd(x, curve.pBN);
+            m.modMult(t, curve.pBN);
+        } else {
+            m.clone(x);
+            m.modSq(curve.pBN);
+        }
+        t.clone(m);
+        m.modAdd(t, curve.pBN);
+        m.modAdd(t, curve.pBN);
+        if (curve.A_SHAPE == ECCurve.A_GENERIC) {
+            t.clone(z);
+            t.modSq(curve.pBN);
+            t.modSq(curve.pBN);
+            t.modMult(curve.aBN, curve.pBN);
+            m.modAdd(t, curve.pBN);
+        }
+
+        // Z2 = 2YZ
+        z.modMult(y, curve.pBN);
+        z.modAdd(z, curve.pBN);
+
+        // S = 4XY^2
+        t.clone(y);
+        t.modSq(curve.pBN);
+        s.lock();
+        s.clone(x);
+        s.modMult(t, curve.pBN);
+        s.modAdd(s, curve.pBN);
+        s.modAdd(s, curve.pBN);
+
+        // 8Y^4
+        t.modSq(curve.pBN);
+        t.modAdd(t, curve.pBN);
+        t.modAdd(t, curve.pBN);
+        t.modAdd(t, curve.pBN);
+
+        // X2 = M^2 - 2S
+        x.clone(m);
+        x.modSq(curve.pBN);
+        x.modSub(s, curve.pBN);
+        x.modSub(s, curve.pBN);
+
+        // Y2 = M(S - X2) - 8Y^4
+        y.clone(s);
+        s.unlock();
+        y.modSub(x, curve.pBN);
+        y.modMult(m, curve.pBN);
+        m.unlock();
+        y.modSub(t, curve.pBN);
+        t.unlock();
+
+        storeJacobian(x, y, z);
+        x.unlock();
+        y.unlock();
+        z.unlock();
+    }
+
+    /**
+     * Loads Jacobian coordinates of this point. Uncached points are loaded with Z = 1.
+     *
+     * @param x BigNat for X coordinate
+     * @param y BigNat for Y coordinate
+     * @param z BigNat for Z coordinate
+     */
+    private void loadJacobian(BigNat x, BigNat y, BigNat z) {
+        if (isCacheValid()) {
+            x.clone(cachedX);
+            y.clone(cachedY);
+            z.clone(cachedZ);
+        } else {
+            readCoordinates(x, y);
+            z.setSize(curve.COORD_SIZE);
+            z.setValue((byte) 1);
+        }
+    }
+
+    /**
+     * Stores Jacobian coordinates into this point. Cached points keep them as they are, uncached points are
+     * converted to affine coordinates first. Provided BigNats are overwritten.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param z Z coordinate
+     */
+    private void storeJacobian(BigNat x, BigNat y, BigNat z) {
+        if (cacheState != null) {
+            cachedX.copy(x);
+            cachedY.copy(y);
+            cachedZ.copy(z);
+            cacheState[CACHE_VALID] = true;
+            cacheState[CACHE_DIRTY] = true;
+            cacheState[CACHE_PROJECTIVE] = true;
+            return;
+        }
+        z.modInv(curve.pBN);
+        y.modMult(z, curve.pBN);
+        z.modSq(curve.pBN);
+        x.modMult(z, curve.pBN);
+        y.modMult(z, curve.pBN);
+        writeCoordinates(x, y);
+    }
+
+    /**
+     * Writes modified cached coordinates of this raw point into its serialized value and returns it.
+     * The returned array stays valid until this point is modified.
+     *
+     * @return array with the uncompressed point at offset 0
+     */
+    private byte[] serialize() {
+        if (isCacheDirty()) {
+            flushCache(raw, (short) 0);
+        }
+        return raw;
+    }
+
+    /**
+     * Writes modified cached coordinates into the point object. The serialized point is left in provided buffer,
+     * so callers holding a lock on a point array can pass it here directly.
+     *
+     * @param buffer array with space for a serialized point
+     * @param offset start offset within the array
+     */
+    private void flushCache(byte[] buffer, short offset) {
+        normalize();
+        buffer[offset] = (byte) 0x04;
+        cachedX.prependZeros(curve.COORD_SIZE, buffer, (short) (offset + 1));
+        cachedY.prependZeros(curve.COORD_SIZE, buffer, (short) (offset + 1 + curve.COORD_SIZE));
+        storeW(buffer, offset, curve.POINT_SIZE);
+        cacheState[CACHE_DIRTY] = false;
+    }
+
+    /**
+     * Stores serialized point into the point object. Raw points copy uncompressed points directly, other
+     * encodings are converted by the curve's disposable public key.
+     *
+     * @param buffer array with serialized point
+     * @param offset start offset within the array
+     * @param length length of serialized point
+     */
+    private void storeW(byte[] buffer, short offset, short length) {
+        if (raw == null) {
+            point.setW(buffer, offset, length);
+        } else if (length == curve.POINT_SIZE && buffer[offset] == (byte) 0x04) {
+            Util.arrayCopyNonAtomic(buffer, offset, raw, (short) 0, length);
+        } else {
+            ECPublicKey pub = curve.getDisposablePub();
+            pub.setW(buffer, offset, length);
+            pub.getW(raw, (short) 0);
+        }
+    }
+
+    /**
+     * Serializes value of the point object, ignoring the coordinate cache.
+     *
+     * @param buffer array for serialized point
+     * @param offset start offset within the array
+     * @return length of serialized point
+     */
+    private short loadW(byte[] buffer, short offset) {
+        if (raw != null) {
+            Util.arrayCopyNonAtomic(raw, (short) 0, buffer, offset, curve.POINT_SIZE);
+            return curve.POINT_SIZE;
+        }
+        return point.getW(buffer, offset);
+    }
+
+    /**
+     * Loads affine coordinates of this point into provided BigNats, using the cache if possible.
+     *
+     * @param x BigNat for X coordinate
+     * @param y BigNat for Y coordinate
+     */
+    private void readCoordinates(BigNat x, BigNat y) {
+        if (isCacheValid()) {
+            normalize();
+            x.clone(cachedX);
+            y.clone(cachedY);
+            return;
+        }
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        loadW(pointBuffer, (short) 0);
+        x.setSize(curve.COORD_SIZE);
+        x.fromByteArray(pointBuffer, (short) 1, curve.COORD_SIZE);
+        y.setSize(curve.COORD_SIZE);
+        y.fromByteArray(pointBuffer, (short) (1 + curve.COORD_SIZE), curve.COORD_SIZE);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+        if (cacheState != null) {
+            cachedX.copy(x);
+            cachedY.copy(y);
+            cachedZ.setValue((byte) 1);
+            cacheState[CACHE_VALID] = true;
+        }
+    }
+
+    /**
+     * Sets this point to provided affine coordinates. With caching enabled, the point object is updated lazily.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    private void writeCoordinates(BigNat x, BigNat y) {
+        if (cacheState != null) {
+            cachedX.copy(x);
+            cachedY.copy(y);
+            cachedZ.setValue((byte) 1);
+            cacheState[CACHE_VALID] = true;
+            cacheState[CACHE_DIRTY] = true;
+            cacheState[CACHE_PROJECTIVE] = false;
+            return;
+        }
+        byte[] pointBuffer = rm.POINT_ARRAY_A;
+
+        rm.lock(rm.POINT_ARRAY_A_LOCK);
+        pointBuffer[0] = (byte) 0x04;
+        // If x and y are shorter than curve.COORD_SIZE due to leading zeroes which were shrunk before, then we must add these back
+        x.prependZeros(curve.COORD_SIZE, pointBuffer, (short) 1);
+        y.prependZeros(curve.COORD_SIZE, pointBuffer, (short) (1 + curve.COORD_SIZE));
+        storeW(pointBuffer, (short) 0, curve.POINT_SIZE);
+        rm.unlock(rm.POINT_ARRAY_A_LOCK);
+    }
+
+
     //
-    // ECKey methods
+    // ECKey methods, raw points use the curve's disposable public key
     //
     public void setFieldFP(byte[] bytes, short s, short s1) throws CryptoException {
-        point.setFieldFP(bytes, s, s1);
+        key().setFieldFP(bytes, s, s1);
     }
 
     public void setFieldF2M(short s) throws CryptoException {
-        point.setFieldF2M(s);
+        key().setFieldF2M(s);
     }
 
     public void setFieldF2M(short s, short s1, short s2) throws CryptoException {
-        point.setFieldF2M(s, s1, s2);
+        key().setFieldF2M(s, s1, s2);
     }
 
     public void setA(byte[] bytes, short s, short s1) throws CryptoException {
-        point.setA(bytes, s, s1);
+        key().setA(bytes, s, s1);
     }
 
     public void setB(byte[] bytes, short s, short s1) throws CryptoException {
-        point.setB(bytes, s, s1);
+        key().setB(bytes, s, s1);
     }
 
     public void setG(byte[] bytes, short s, short s1) throws CryptoException {
-        point.setG(bytes, s, s1);
+        key().setG(bytes, s, s1);
     }
 
     public void setR(byte[] bytes, short s, short s1) throws CryptoException {
-        point.setR(bytes, s, s1);
+        key().setR(bytes, s, s1);
     }
 
     public void setK(short s) {
-        point.setK(s);
+        key().setK(s);
     }
 
     public short getField(byte[] bytes, short s) throws CryptoException {
-        return point.getField(bytes, s);
+        return key().getField(bytes, s);
     }
 
     public short getA(byte[] bytes, short s) throws CryptoException {
-        return point.getA(bytes, s);
+        return key().getA(bytes, s);
     }
 
     public short getB(byte[] bytes, short s) throws CryptoException {
-        return point.getB(bytes, s);
+        return key().getB(bytes, s);
     }
 
     public short getG(byte[] bytes, short s) throws CryptoException {
-        return point.getG(bytes, s);
+        return key().getG(bytes, s);
     }
 
     public short getR(byte[] bytes, short s) throws CryptoException {
-        return point.getR(bytes, s);
+        return key().getR(bytes, s);
     }
 
     public short getK() throws CryptoException {
-        return point.getK();
+        return key().getK();
+    }
+
+    private ECPublicKey key() {
+        if (raw != null) {
+            return curve.getDisposablePub();
+        }
+        return point;
     }
 }
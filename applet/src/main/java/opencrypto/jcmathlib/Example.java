@@ -76,7 +76,6 @@ public class Example extends Applet {
     public boolean select() {
         if (initialized) {
             rm.refreshAfterReset();
-            curve.updateAfterReset();
         }
         return true;
     }
@@ -51,10 +51,10 @@ public class Integer {
      * @param other integer to copy from
      */
     public Integer(Integer other) {
-        rm.lock(rm.ARRAY_A);
+        rm.lock(rm.ARRAY_A_LOCK);
         short len = magnitude.copyToByteArray(rm.ARRAY_A, (short) 0);
         allocate(len, other.getSign(), rm.ARRAY_A, (short) 0, other.rm);
-        rm.unlock(rm.ARRAY_A);
+        rm.unlock(rm.ARRAY_A_LOCK);
     }
 
     /**
@@ -68,10 +68,10 @@ public class Integer {
     public Integer(byte sign, BigNat magnitude, boolean copy, ResourceManager rm) {
         if (copy) {
             // Copy from provided BigNat
-            rm.lock(rm.ARRAY_A);
+            rm.lock(rm.ARRAY_A_LOCK);
             short len = magnitude.copyToByteArray(rm.ARRAY_A, (short) 0);
             allocate(len, sign, rm.ARRAY_A, (short) 0, rm);
-            rm.unlock(rm.ARRAY_A);
+            rm.unlock(rm.ARRAY_A_LOCK);
         } else {
             // Use directly provided BigNat as storage - no allocation
             initialize(sign, magnitude, rm);
@@ -265,8 +265,6 @@ public class Integer {
      * @param other other integer to add
      */
     public void add(Integer other) {
-        BigNat tmp = rm.BN_A;
-
         if (this.isPositive() && other.isPositive()) { //this and other are (+)
             this.sign = 0;
             this.magnitude.add(other.magnitude);
@@ -282,18 +280,20 @@ public class Integer {
                 this.magnitude.subtract(other.magnitude);
             } else if (this.isPositive() && this.getMagnitude().isLesser(other.getMagnitude())) { //this(+) has smaller magnitude than other(-)
                 this.sign = 1;
-                tmp.lock();
+                short mark = rm.mark();
+                BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
                 tmp.clone(other.getMagnitude());
                 tmp.subtract(this.magnitude);
                 this.magnitude.copy(tmp);
-                tmp.unlock();
+                rm.release(mark);
             } else if (this.isNegative() && this.getMagnitude().isLesser(other.getMagnitude())) {  //this(-) has larger magnitude than other(+)
                 this.sign = 0;
-                tmp.lock();
+                short mark = rm.mark();
+                BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
                 tmp.clone(other.getMagnitude());
                 tmp.subtract(this.magnitude);
                 this.magnitude.copy(tmp);
-                tmp.unlock();
+                rm.release(mark);
             } else if (this.getMagnitude().equals(other.getMagnitude())) {  //this has opposite sign than other, and the same magnitude
                 this.sign = 0;
                 this.zero();
@@ -319,8 +319,6 @@ public class Integer {
      * @param other other integer to multiply
      */
     public void multiply(Integer other) {
-        BigNat tmp = rm.BN_B;
-
         if (this.isPositive() && other.isNegative()) {
             this.setSign((byte) 1);
         } else if (this.isNegative() && other.isPositive()) {
@@ -329,11 +327,12 @@ public class Integer {
             this.setSign((byte) 0);
         }
 
-        tmp.lock();
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
         tmp.clone(this.magnitude);
         tmp.mult(other.getMagnitude());
         this.magnitude.copy(tmp);
-        tmp.unlock();
+        rm.release(mark);
     }
 
     /**
@@ -342,8 +341,6 @@ public class Integer {
      * @param other divisor
      */
     public void divide(Integer other) {
-        BigNat tmp = rm.BN_A;
-
         if (this.isPositive() && other.isNegative()) {
             this.setSign((byte) 1);
         } else if (this.isNegative() && other.isPositive()) {
@@ -352,10 +349,11 @@ public class Integer {
             this.setSign((byte) 0);
         }
 
-        tmp.lock();
+        short mark = rm.mark();
+        BigNat tmp = rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
         tmp.clone(this.magnitude);
         tmp.remainderDivide(other.getMagnitude(), this.magnitude);
-        tmp.unlock();
+        rm.release(mark);
     }
 
     /**
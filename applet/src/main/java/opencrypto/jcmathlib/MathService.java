@@ -0,0 +1,51 @@
+package opencrypto.jcmathlib;
+
+import javacard.framework.Shareable;
+
+/**
+ * Shareable interface of BigNat and ECPoint operations provided by {@code MathServiceApplet} to other applets on the
+ * card. Obtain it with {@code JCSystem.getAppletShareableInterfaceObject(serviceAID, (byte) 0)}.
+ *
+ * Operands and results are passed in a global array (e.g., the APDU buffer), as only such arrays can be accessed
+ * across the applet firewall. BigNats are unsigned big-endian values, points are encoded as accepted by
+ * {@code ECPoint.setW}. Results are written to the same array and their length is returned.
+ */
+public interface MathService extends Shareable {
+    byte CURVE_SECP256R1 = 0;
+    byte CURVE_SECP256K1 = 1;
+
+    /**
+     * Computes (a + b) % mod.
+     */
+    short bnModAdd(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset);
+
+    /**
+     * Computes (a - b) % mod.
+     */
+    short bnModSub(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset);
+
+    /**
+     * Computes (a * b) % mod.
+     */
+    short bnModMult(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset);
+
+    /**
+     * Computes (a ^ exp) % mod.
+     */
+    short bnModExp(byte[] buffer, short aOffset, short aLength, short expOffset, short expLength, short modOffset, short modLength, short outOffset);
+
+    /**
+     * Computes a ^ -1 % mod for a prime mod.
+     */
+    short bnModInv(byte[] buffer, short aOffset, short aLength, short modOffset, short modLength, short outOffset);
+
+    /**
+     * Computes the sum of two points on a curve and writes it uncompressed.
+     */
+    short ecAdd(byte curve, byte[] buffer, short pointOffset, short pointLength, short otherOffset, short otherLength, short outOffset);
+
+    /**
+     * Computes the scalar multiple of a point on a curve and writes it uncompressed.
+     */
+    short ecMultiply(byte curve, byte[] buffer, short pointOffset, short pointLength, short scalarOffset, short scalarLength, short outOffset);
+}
@@ -0,0 +1,239 @@
+package opencrypto.jcmathlib;
+
+import javacard.framework.AID;
+import javacard.framework.APDU;
+import javacard.framework.Applet;
+import javacard.framework.ISO7816;
+import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
+import javacard.framework.Shareable;
+import javacard.framework.Util;
+
+/**
+ * Library applet serving {@code MathService} to other applets on the card. All clients share one
+ * {@code ResourceManager}, so RSA and KeyAgreement engines and RAM buffers are allocated only once per card.
+ * The service is provided only to applets listed in the install parameters, each entry being an AID
+ * prefixed by its length. Service points are kept in RAM and, like helper objects, erased before each call returns
+ * or fails, so no operand is left for the next client.
+ */
+public class MathServiceApplet extends Applet implements MathService {
+    public final static short CARD_TYPE = OperationSupport.SIMULATOR; // TODO set your card
+
+    ResourceManager rm;
+    ECCurve curve, curveK1;
+    ECPoint point1, point2, pointK1, pointK1Other;
+    BigNat bn1, bn2, bn3;
+    boolean initialized = false;
+    boolean[] refreshed; // Cleared on reset, the service is not selected before being called by clients
+    byte[] clients; // Length-prefixed AIDs of applets allowed to use the service
+
+    public MathServiceApplet() {
+        OperationSupport.getInstance().setCard(CARD_TYPE);
+        refreshed = JCSystem.makeTransientBooleanArray((short) 1, JCSystem.CLEAR_ON_RESET);
+        if (!OperationSupport.getInstance().DEFERRED_INITIALIZATION) {
+            initialize();
+        }
+    }
+
+    public void initialize() {
+        if (initialized) {
+            return;
+        }
+
+        rm = new ResourceManager((short) 256);
+        curve = new ECCurve(SecP256r1.p, SecP256r1.a, SecP256r1.b, SecP256r1.G, SecP256r1.r, rm);
+        curveK1 = new ECCurve(SecP256k1.p, SecP256k1.a, SecP256k1.b, SecP256k1.G, SecP256k1.r, rm);
+        curveK1.setGLV(SecP256k1.beta, SecP256k1.lambda, SecP256k1.g1, SecP256k1.g2, SecP256k1.minusB1, SecP256k1.minusB2);
+        point1 = new RawECPoint(curve);
+        point2 = new RawECPoint(curve);
+        pointK1 = new RawECPoint(curveK1);
+        pointK1Other = new RawECPoint(curveK1);
+
+        bn1 = new BigNat(rm.MAX_BIGNAT_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+        bn2 = new BigNat(rm.MAX_BIGNAT_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+        bn3 = new BigNat(rm.MAX_BIGNAT_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_RESET, rm);
+        initialized = true;
+        refreshed[0] = true;
+    }
+
+    public static void install(byte[] bArray, short bOffset, byte bLength) {
+        MathServiceApplet applet = new MathServiceApplet();
+        // Skip instance AID and privileges, the application specific parameters list the clients
+        short offset = (short) (bOffset + bArray[bOffset] + 1);
+        offset += (short) (bArray[offset] + 1);
+        applet.setClients(bArray, (short) (offset + 1), (short) (bArray[offset] & 0xff));
+        applet.register();
+    }
+
+    /**
+     * Sets applets allowed to use the service, replacing the previous list.
+     *
+     * @param buffer array with AIDs, each prefixed by its length
+     * @param offset offset of the first AID length
+     * @param length total length of the list
+     */
+    void setClients(byte[] buffer, short offset, short length) {
+        clients = new byte[length];
+        Util.arrayCopy(buffer, offset, clients, (short) 0, length);
+    }
+
+    /**
+     * Returns true if the applet with provided AID is allowed to use the service.
+     */
+    private boolean isClient(AID clientAID) {
+        if (clientAID == null || clients == null) {
+            return false;
+        }
+        for (short i = 0; i < (short) clients.length; i = (short) (i + clients[i] + 1)) {
+            if (clientAID.equals(clients, (short) (i + 1), clients[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Shareable getShareableInterfaceObject(AID clientAID, byte parameter) {
+        if (parameter != 0 || !isClient(clientAID)) {
+            return null;
+        }
+        return this;
+    }
+
+    public void process(APDU apdu) {
+        if (selectingApplet()) {
+            return;
+        }
+        ISOException.throwIt(ISO7816.SW_INS_NOT_SUPPORTED);
+    }
+
+    /**
+     * Prepare shared objects for a call from a client. Objects left locked by a previously failed call are unlocked.
+     */
+    private void begin() {
+        if (!initialized) {
+            initialize();
+        }
+        if (!refreshed[0]) {
+            rm.refreshAfterReset();
+            refreshed[0] = true;
+        }
+        rm.unlockAll();
+    }
+
+    /**
+     * Erase operands of a call from service and helper objects. Called also when the call fails.
+     * Service points are reset to the generators of their curves.
+     */
+    private void end() {
+        bn1.erase();
+        bn2.erase();
+        bn3.erase();
+        point1.updatePointObjects();
+        point2.updatePointObjects();
+        pointK1.updatePointObjects();
+        pointK1Other.updatePointObjects();
+        rm.erase();
+    }
+
+    private ECPoint point(byte curveId, boolean other) {
+        if (curveId == CURVE_SECP256R1) {
+            return other ? point2 : point1;
+        }
+        if (curveId == CURVE_SECP256K1) {
+            return other ? pointK1Other : pointK1;
+        }
+        ISOException.throwIt(ReturnCodes.SW_OPERATION_NOT_SUPPORTED);
+        return null;
+    }
+
+    public short bnModAdd(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset) {
+        begin();
+        try {
+            bn1.fromByteArray(buffer, aOffset, aLength);
+            bn2.fromByteArray(buffer, bOffset, bLength);
+            bn3.fromByteArray(buffer, modOffset, modLength);
+            bn1.modAdd(bn2, bn3);
+            return bn1.copyToByteArray(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short bnModSub(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset) {
+        begin();
+        try {
+            bn1.fromByteArray(buffer, aOffset, aLength);
+            bn2.fromByteArray(buffer, bOffset, bLength);
+            bn3.fromByteArray(buffer, modOffset, modLength);
+            bn1.modSub(bn2, bn3);
+            return bn1.copyToByteArray(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short bnModMult(byte[] buffer, short aOffset, short aLength, short bOffset, short bLength, short modOffset, short modLength, short outOffset) {
+        begin();
+        try {
+            bn1.fromByteArray(buffer, aOffset, aLength);
+            bn2.fromByteArray(buffer, bOffset, bLength);
+            bn3.fromByteArray(buffer, modOffset, modLength);
+            bn1.modMult(bn2, bn3);
+            return bn1.copyToByteArray(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short bnModExp(byte[] buffer, short aOffset, short aLength, short expOffset, short expLength, short modOffset, short modLength, short outOffset) {
+        begin();
+        try {
+            bn1.fromByteArray(buffer, aOffset, aLength);
+            bn2.fromByteArray(buffer, expOffset, expLength);
+            bn3.fromByteArray(buffer, modOffset, modLength);
+            bn1.modExp(bn2, bn3);
+            return bn1.copyToByteArray(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short bnModInv(byte[] buffer, short aOffset, short aLength, short modOffset, short modLength, short outOffset) {
+        begin();
+        try {
+            bn1.fromByteArray(buffer, aOffset, aLength);
+            bn3.fromByteArray(buffer, modOffset, modLength);
+            bn1.modInv(bn3);
+            return bn1.copyToByteArray(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short ecAdd(byte curveId, byte[] buffer, short pointOffset, short pointLength, short otherOffset, short otherLength, short outOffset) {
+        begin();
+        try {
+            ECPoint point = point(curveId, false);
+            ECPoint other = point(curveId, true);
+            point.setW(buffer, pointOffset, pointLength);
+            other.setW(buffer, otherOffset, otherLength);
+            point.add(other);
+            return point.getW(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+
+    public short ecMultiply(byte curveId, byte[] buffer, short pointOffset, short pointLength, short scalarOffset, short scalarLength, short outOffset) {
+        begin();
+        try {
+            ECPoint point = point(curveId, false);
+            bn1.fromByteArray(buffer, scalarOffset, scalarLength);
+            point.setW(buffer, pointOffset, pointLength);
+            point.multiplication(bn1);
+            return point.getW(buffer, outOffset);
+        } finally {
+            end();
+        }
+    }
+}
@@ -20,25 +20,24 @@ public class ObjectAllocator {
     public static final byte ARRAY_A = 0;
     public static final byte ARRAY_B = 1;
     public static final byte BN_WORD = 2;
-    public static final byte BN_A = 3;
-    public static final byte BN_B = 4;
-    public static final byte BN_C = 5;
-    public static final byte BN_D = 6;
-    public static final byte BN_E = 7;
-    public static final byte BN_F = 8;
-    public static final byte BN_G = 9;
+    public static final byte BN_F = 3;
+    public static final byte BN_G = 4;
 
-    public static final byte EC_BN_A = 10;
-    public static final byte EC_BN_B = 11;
-    public static final byte EC_BN_C = 12;
-    public static final byte EC_BN_D = 13;
-    public static final byte EC_BN_E = 14;
-    public static final byte EC_BN_F = 15;
-    public static final byte POINT_ARRAY_A = 16;
-    public static final byte POINT_ARRAY_B = 17;
-    public static final byte HASH_ARRAY = 18;
+    public static final byte EC_BN_A = 5;
+    public static final byte EC_BN_B = 6;
+    public static final byte EC_BN_C = 7;
+    public static final byte EC_BN_D = 8;
+    public static final byte EC_BN_E = 9;
+    public static final byte EC_BN_F = 10;
+    public static final byte EC_BN_G = 11;
+    public static final byte POINT_ARRAY_A = 12;
+    public static final byte POINT_ARRAY_B = 13;
+    public static final byte HASH_ARRAY = 14;
+    public static final byte Y_CACHE = 15;
+    public static final byte ARENA = 16; // general purpose helper BigNats
+    public static final byte CURVE_CONSTANTS = 17; // pBN and rBN of each ECCurve
     
-    public static final short ALLOCATOR_TYPE_ARRAY_LENGTH = (short) (HASH_ARRAY + 1);
+    public static final short ALLOCATOR_TYPE_ARRAY_LENGTH = (short) (CURVE_CONSTANTS + 1);
     
     /**
      * Creates new allocator control object, resets performance counters
@@ -60,6 +59,14 @@ public class ObjectAllocator {
     public void setAllAllocatorsRAM() {
         Util.arrayFillNonAtomic(ALLOCATOR_TYPE_ARRAY, (short) 0, (short) ALLOCATOR_TYPE_ARRAY.length, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
     }
+    /**
+     * All type of allocator for all object as RAM cleared on deselect. The card can share such RAM with other
+     * applets while this one is not selected, curve constants are reloaded on first use after each selection.
+     * Not applicable when the objects are used through a Shareable interface by other selected applets.
+     */
+    public void setAllAllocatorsDeselect() {
+        Util.arrayFillNonAtomic(ALLOCATOR_TYPE_ARRAY, (short) 0, (short) ALLOCATOR_TYPE_ARRAY.length, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+    }
     /**
      * All type of allocator for selected object as RAM (faster), rest EEPROM (saving RAM)
      * The current settings is heuristically obtained from measurements of performance of Bignat and ECPoint operations 
@@ -72,19 +79,73 @@ public class ObjectAllocator {
         ALLOCATOR_TYPE_ARRAY[ARRAY_A] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[ARRAY_B] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[BN_WORD] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
-        ALLOCATOR_TYPE_ARRAY[BN_A] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
-        ALLOCATOR_TYPE_ARRAY[BN_B] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
-        ALLOCATOR_TYPE_ARRAY[BN_C] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
-        ALLOCATOR_TYPE_ARRAY[BN_D] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
-        ALLOCATOR_TYPE_ARRAY[BN_E] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
+        ALLOCATOR_TYPE_ARRAY[ARENA] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[BN_F] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[BN_G] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[EC_BN_B] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[EC_BN_C] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
+        // RAM saved by borrowing the general purpose helpers from the arena
+        ALLOCATOR_TYPE_ARRAY[EC_BN_D] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
+        ALLOCATOR_TYPE_ARRAY[EC_BN_E] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[POINT_ARRAY_A] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
         ALLOCATOR_TYPE_ARRAY[POINT_ARRAY_B] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
+        ALLOCATOR_TYPE_ARRAY[CURVE_CONSTANTS] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
     }   
 
+    /**
+     * Put the most frequently locked objects into RAM within a RAM budget, rest into EEPROM.
+     * Objects are taken in decreasing order of lock count, which is also the number of bytes touched per byte
+     * of RAM spent, the smaller one first on ties. Objects that do not fit into the remaining budget are skipped.
+     * @param lockCounts number of locks of each object indexed by allocator id, e.g., {@code ObjectLocker.profileLockCounts}
+     * @param lengths length of each object indexed by allocator id, objects of length 0 stay in EEPROM
+     * @param ramBudget number of bytes of RAM available for the objects
+     */
+    public void setAllocatorsProfile(short[] lockCounts, short[] lengths, short ramBudget) {
+        setAllAllocatorsEEPROM();
+        while (true) {
+            short best = -1;
+            for (short i = 0; i < ALLOCATOR_TYPE_ARRAY_LENGTH; i++) {
+                if (ALLOCATOR_TYPE_ARRAY[i] != JCSystem.MEMORY_TYPE_PERSISTENT || lengths[i] == 0 || lengths[i] > ramBudget) {
+                    continue;
+                }
+                if (best < 0 || lockCounts[i] > lockCounts[best] || (lockCounts[i] == lockCounts[best] && lengths[i] < lengths[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            ALLOCATOR_TYPE_ARRAY[best] = JCSystem.MEMORY_TYPE_TRANSIENT_RESET;
+            ramBudget -= lengths[best];
+        }
+    }
+
+    /**
+     * Load allocator types of all objects, e.g., a profile obtained by {@code getProfile()} on a previous run.
+     * @param profile array with ALLOCATOR_TYPE_ARRAY_LENGTH allocator types indexed by allocator id
+     * @param profileOffset start offset inside profile
+     */
+    public void loadProfile(byte[] profile, short profileOffset) {
+        for (short i = 0; i < ALLOCATOR_TYPE_ARRAY_LENGTH; i++) {
+            byte type = profile[(short) (profileOffset + i)];
+            if (type != JCSystem.MEMORY_TYPE_PERSISTENT && type != JCSystem.MEMORY_TYPE_TRANSIENT_RESET && type != JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT) {
+                ISOException.throwIt(ReturnCodes.SW_ALLOCATOR_INVALIDPROFILE);
+            }
+        }
+        Util.arrayCopyNonAtomic(profile, profileOffset, ALLOCATOR_TYPE_ARRAY, (short) 0, ALLOCATOR_TYPE_ARRAY_LENGTH);
+    }
+
+    /**
+     * Store allocator types of all objects into provided array.
+     * @param outBuffer output buffer
+     * @param outOffset start offset inside outBuffer
+     * @return number of bytes written
+     */
+    public short getProfile(byte[] outBuffer, short outOffset) {
+        Util.arrayCopyNonAtomic(ALLOCATOR_TYPE_ARRAY, (short) 0, outBuffer, outOffset, ALLOCATOR_TYPE_ARRAY_LENGTH);
+        return ALLOCATOR_TYPE_ARRAY_LENGTH;
+    }
+
     /**
      * Allocates new byte[] array with provided length either in RAM or EEPROM based on an allocator type.
      * Method updates internal counters of bytes allocated with specific allocator. Use {@code getAllocatedInRAM()} 
@@ -28,6 +28,12 @@ public class ObjectLocker {
      * If true, object is erased once unlocked from use
      */
     private boolean PROFILE_LOCKED_OBJECTS = false;
+    /**
+     * Configuration flag controlling counting of locks per allocator object id.
+     * If true, every lock of an object registered with its allocator id is
+     * counted in profileLockCounts. Set by {@code setProfileLockCounts()}
+     */
+    private boolean PROFILE_LOCK_COUNTS = false;
     /**
      * Array of pointers to objects which will be guarded by locks. 
      * Every even value contains pointer to registered object. Subsequent index 
@@ -48,6 +54,18 @@ public class ObjectLocker {
      * All objects (lockedObjects[i]) which happened to be locked together with have 1 at [0...i...N-1]. 
      */
     public byte[] profileLockedObjects;
+    /**
+     * Number of locks of each object indexed by its allocator id (see ObjectAllocator), saturates at 0x7fff.
+     */
+    public short[] profileLockCounts;
+    /**
+     * Length in bytes of each object indexed by its allocator id, 0 if the object was not registered.
+     */
+    public short[] profileLockLengths;
+    /**
+     * Allocator id of each registered object, -1 if the object was registered without one.
+     */
+    private byte[] lockedObjectsIds;
     /**
      * If true, locking is performed, otherwise relevant method just return without any operation performed
      */
@@ -65,20 +83,46 @@ public class ObjectLocker {
         ERASE_ON_LOCK = bEraseOnLock;
         ERASE_ON_UNLOCK = bEraseOnUnlock;
         profileLockedObjects = new byte[(short) (numObjects * numObjects)]; 
+        profileLockCounts = new short[ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH];
+        profileLockLengths = new short[ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH];
+        lockedObjectsIds = new byte[numObjects];
+        Util.arrayFillNonAtomic(lockedObjectsIds, (short) 0, numObjects, (byte) -1);
         resetProfileLocks();
     }
     
     /**
-     * Reset profile array with profile locks statistics.
+     * Reset profile arrays with profile locks statistics.
      */
     public void resetProfileLocks() {
         Util.arrayFillNonAtomic(profileLockedObjects, (short) 0, (short) profileLockedObjects.length, (byte) 0);
+        for (short i = 0; i < (short) profileLockCounts.length; i++) {
+            profileLockCounts[i] = 0;
+        }
+    }
+
+    /**
+     * Controls counting of locks per allocator id. Run a representative workload with counting enabled
+     * and pass profileLockCounts and profileLockLengths to {@code ObjectAllocator.setAllocatorsProfile()}.
+     * @param bProfile if true, locks are counted
+     */
+    public void setProfileLockCounts(boolean bProfile) {
+        PROFILE_LOCK_COUNTS = bProfile;
+    }
+
+    /**
+     * Count a lock of object identified by its allocator id. Used by objects guarding their locks themselves.
+     * @param objectAllocatorID allocator id of the object
+     */
+    public void profileLock(byte objectAllocatorID) {
+        if (PROFILE_LOCK_COUNTS && objectAllocatorID >= 0 && profileLockCounts[objectAllocatorID] != Short.MAX_VALUE) {
+            profileLockCounts[objectAllocatorID]++;
+        }
     }
 
     /**
      * Register new object for lock guarding. 
      * @param objToLock object to be guarded
-     * @return index to internal array where registered object is stored (if known, lock/unlock is faster)
+     * @return handle of the registered object for {@code lock(short)} and {@code unlock(short)}
      */
     public short registerLock(Object objToLock) {
         short i;
@@ -95,6 +139,19 @@ public class ObjectLocker {
         ISOException.throwIt(ReturnCodes.SW_LOCK_NOFREESLOT);
         return -1;
     }
+
+    /**
+     * Register new array for lock guarding together with its allocator id, so its locks can be counted.
+     * @param objToLock array to be guarded
+     * @param objectAllocatorID allocator id of the array (see ObjectAllocator)
+     * @return handle of the registered array for {@code lock(short)} and {@code unlock(short)}
+     */
+    public short registerLock(byte[] objToLock, byte objectAllocatorID) {
+        short handle = registerLock(objToLock);
+        lockedObjectsIds[(short) (handle / 2)] = objectAllocatorID;
+        profileLockLengths[objectAllocatorID] = (short) objToLock.length;
+        return handle;
+    }
     /**
      * Locking array (placed in RAM) must be refreshed after card reset. Call this method during select()
      */
@@ -149,6 +206,25 @@ public class ObjectLocker {
             Util.arrayFillNonAtomic(objToLock, (short) 0, (short) objToLock.length, (byte) 0);
         }
     }
+
+    /**
+     * Lock/reserve object identified by the handle returned from {@code registerLock()}. Unlike
+     * {@code lock(Object)}, no search of registered objects is performed.
+     *
+     * @param handle handle of the object
+     * @throws SW_ALREADYLOCKED if already locked (is already in use by
+     * other operation)
+     */
+    public void lock(short handle) {
+        if (!bLockingActive) {
+            return;
+        }
+        Object objToLock = registeredObject(handle);
+        lock(objToLock, handle);
+        if (ERASE_ON_LOCK && objToLock instanceof byte[]) {
+            Util.arrayFillNonAtomic((byte[]) objToLock, (short) 0, (short) ((byte[]) objToLock).length, (byte) 0);
+        }
+    }
     /**
      * Unlock/release object from use. Used to protect corruption of
      * pre-allocated objects used in different nested operations. Must
@@ -185,7 +261,26 @@ public class ObjectLocker {
         if (ERASE_ON_UNLOCK) {
             Util.arrayFillNonAtomic(objToUnlock, (short) 0, (short) objToUnlock.length, (byte) 0);
         }
-    }    
+    }
+
+    /**
+     * Unlock/release object identified by the handle returned from {@code registerLock()}. Unlike
+     * {@code unlock(Object)}, no search of registered objects is performed.
+     *
+     * @param handle handle of the object
+     * @throws SW_NOTLOCKED_BIGNAT if was not locked before (inconsistence in
+     * lock/unlock sequence)
+     */
+    public void unlock(short handle) {
+        if (!bLockingActive) {
+            return;
+        }
+        Object objToUnlock = registeredObject(handle);
+        unlock(objToUnlock, handle);
+        if (ERASE_ON_UNLOCK && objToUnlock instanceof byte[]) {
+            Util.arrayFillNonAtomic((byte[]) objToUnlock, (short) 0, (short) ((byte[]) objToUnlock).length, (byte) 0);
+        }
+    }
     
     /**
      * Unlocks all locked objects
@@ -224,6 +319,39 @@ public class ObjectLocker {
     }
     
     
+    /**
+     * Check if object identified by provided handle is logically locked
+     * @param handle handle of the object
+     * @return true of object is logically locked, false otherwise
+     */
+    public boolean isLocked(short handle) {
+        if (!bLockingActive) {
+            return false;
+        }
+        return lockedObjects[(short) (registeredIndex(handle) + 1)] != null;
+    }
+
+    /**
+     * Returns object registered under provided handle.
+     * @param handle handle returned from {@code registerLock()}
+     * @return registered object
+     */
+    private Object registeredObject(short handle) {
+        return lockedObjects[registeredIndex(handle)];
+    }
+
+    /**
+     * Validates provided handle.
+     * @param handle handle returned from {@code registerLock()}
+     * @return index of the registered object in lockedObjects
+     */
+    private short registeredIndex(short handle) {
+        if (handle < 0 || handle >= (short) lockedObjects.length || (short) (handle & 1) != 0 || lockedObjects[handle] == null) {
+            ISOException.throwIt(ReturnCodes.SW_LOCK_OBJECT_NOT_FOUND);
+        }
+        return handle;
+    }
+
     private void lock(Object objToLock, short lockIndex) {
         if (lockedObjects[lockIndex] != null && !lockedObjects[lockIndex].equals(objToLock)) {
             ISOException.throwIt(ReturnCodes.SW_LOCK_OBJECT_MISMATCH);
@@ -235,6 +363,7 @@ public class ObjectLocker {
             // this array is already locked, raise exception (incorrect sequence of locking and unlocking)
             ISOException.throwIt(ReturnCodes.SW_LOCK_ALREADYLOCKED);
         }
+        profileLock(lockedObjectsIds[(short) (lockIndex / 2)]);
         if (PROFILE_LOCKED_OBJECTS) {
             // If enabled, check status of all other objects and mark these that are currently locked
             short profileLockOffset = (short) ((short) (lockIndex / 2) * (short) ((short) lockedObjects.length / 2)); // Obtain section of profileLockedObjects array relevant for current object
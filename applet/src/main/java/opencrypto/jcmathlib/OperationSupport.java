@@ -1,5 +1,7 @@
 package opencrypto.jcmathlib;
 
+import javacard.security.KeyBuilder;
+
 /**
  * OperationSupport class
  *
@@ -16,7 +18,13 @@ public class OperationSupport {
     public static final short GD70 = 0x0005;        // G+D Sm@rtcafe 7.0
     public static final short SECORA = 0x0006;      // Infineon Secora ID S
 
+    public static final short[] RSA_BIT_LENGTHS_DEFAULT = {KeyBuilder.LENGTH_RSA_512, KeyBuilder.LENGTH_RSA_768,
+            KeyBuilder.LENGTH_RSA_896, KeyBuilder.LENGTH_RSA_1024, KeyBuilder.LENGTH_RSA_1280, KeyBuilder.LENGTH_RSA_1536,
+            KeyBuilder.LENGTH_RSA_1984, KeyBuilder.LENGTH_RSA_2048};
+    public static final short[] RSA_BIT_LENGTHS_SECORA = {KeyBuilder.LENGTH_RSA_1024, KeyBuilder.LENGTH_RSA_2048};
+
     public short MIN_RSA_BIT_LENGTH = 512;
+    public short[] RSA_BIT_LENGTHS = RSA_BIT_LENGTHS_DEFAULT; // RSA key lengths supported by the card, ascending
     public boolean DEFERRED_INITIALIZATION = false;
 
     public boolean RSA_EXP = true;
@@ -33,6 +41,7 @@ public class OperationSupport {
     public boolean EC_HW_X = true;
     public boolean EC_HW_ADD = false;
     public boolean EC_SW_DOUBLE = false;
+    public boolean EC_SW_MULT = false;
 
     private OperationSupport() {
     }
@@ -62,12 +71,14 @@ public class OperationSupport {
                 RSA_PUB = true;
                 RSA_EXTRA_MOD = true;
                 RSA_APPEND_MOD = true;
+                EC_SW_DOUBLE = true;
                 break;
             case GD70:
                 RSA_PUB = true;
                 RSA_CHECK_ONE = true;
                 RSA_EXTRA_MOD = true;
                 RSA_APPEND_MOD = true;
+                EC_SW_DOUBLE = true;
                 break;
             case JCOP3_P60:
                 DEFERRED_INITIALIZATION = true;
@@ -82,6 +93,7 @@ public class OperationSupport {
                 break;
             case SECORA:
                 MIN_RSA_BIT_LENGTH = 1024;
+                RSA_BIT_LENGTHS = RSA_BIT_LENGTHS_SECORA;
                 RSA_SQ = false;
                 RSA_PUB = true;
                 RSA_EXTRA_MOD = true;
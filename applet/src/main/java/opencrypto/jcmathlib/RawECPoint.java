@@ -0,0 +1,28 @@
+package opencrypto.jcmathlib;
+
+/**
+ * Elliptic curve point with value kept in a transient array. Unlike {@code ECPoint}, no {@code KeyPair} is
+ * allocated and no key is generated on construction, so raw points are cheap enough for pools of temporary
+ * points such as precomputed tables. Hardware operations borrow the disposable keys of the curve. The point
+ * value is cleared on card reset.
+ */
+public class RawECPoint extends ECPoint {
+    /**
+     * Creates new raw point for provided {@code curve}. Initial point value is the curve generator.
+     *
+     * @param curve point's elliptic curve
+     */
+    public RawECPoint(ECCurve curve) {
+        super(curve, false, true);
+    }
+
+    /**
+     * Creates new raw point for provided {@code curve}. Initial point value is the curve generator.
+     *
+     * @param curve point's elliptic curve
+     * @param cacheCoordinates true if parsed coordinates should be cached
+     */
+    public RawECPoint(ECCurve curve, boolean cacheCoordinates) {
+        super(curve, cacheCoordinates, true);
+    }
+}
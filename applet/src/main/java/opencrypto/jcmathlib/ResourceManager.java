@@ -15,7 +15,6 @@ public class ResourceManager {
     MessageDigest hashEngine;
     KeyAgreement ecMultKA;
     KeyAgreement ecAddKA;
-    Signature verifyEcdsa;
     Cipher sqCiph, modSqCiph, expCiph;
     RSAPublicKey sqPub, modSqPub, expPub;
     RSAPrivateKey sqPriv, modSqPriv, expPriv;
@@ -23,11 +22,44 @@ public class ResourceManager {
 
     byte[] ARRAY_A, ARRAY_B, POINT_ARRAY_A, POINT_ARRAY_B, HASH_ARRAY;
 
+    // Cache of recovered Y coordinates, each entry is [age | x | y], age 0 marks an empty entry
+    public static final short Y_CACHE_ENTRIES = 4;
+    public final short Y_CACHE_ENTRY_LENGTH;
+    byte[] Y_CACHE;
+    Object[] yCacheCurves;
+
+    // Keys the KeyAgreement engines were last initialized with, {ecMultKA, ecAddKA}
+    Object[] keyAgreementKeys;
+
+    // Disposable key pairs shared by curves of the same bit length and the curves whose domain parameters they hold
+    public static final short DISPOSABLE_PAIRS = 3;
+    Object[] disposablePairs;
+    Object[] disposableOwners;
+
+    // Scratch arena holding the general purpose helper BigNats, views of ARENA are borrowed in LIFO order between
+    // mark() and release(). It fits five BigNats of MAX_BIGNAT_SIZE, which covers modSqrt, the deepest user.
+    public static final short ARENA_VIEWS = 8;
+    public final short ARENA_SIZE;
+    byte[] ARENA;
+    BigNat[] arenaViews;
+    short[] arenaState; // [0] number of borrowed views, [i + 1] start of the i-th view within ARENA
+    short arenaPeak; // The largest number of ARENA bytes borrowed at once since the last resetPeakUsage
+    // Peak sizes are recorded only between resetPeakUsage and stopPeakUsage, so operations do not write them to EEPROM
+    boolean PROFILE_PEAK_USAGE = false;
+    // [0] the largest number of ARENA bytes borrowed at once since the last erase, [1] 1 if [0] is known. Kept in
+    // RAM cleared on reset, so after a reset the first erase clears the whole ARENA, which may be persistent.
+    short[] arenaDirty;
+
+    // Shared arrays are filled with this byte by resetPeakUsage, their used length is where it ends
+    public static final byte PEAK_PAINT = (byte) 0xa5;
+
     static byte[] CONST_TWO = {0x02};
 
+    short curveConstantsLength; // Bytes allocated for pBN and rBN of curves using this manager
+
     BigNat BN_WORD;
-    BigNat BN_A, BN_B, BN_C, BN_D, BN_E, BN_F, BN_G;
-    BigNat EC_BN_A, EC_BN_B, EC_BN_C, EC_BN_D, EC_BN_E, EC_BN_F;
+    BigNat BN_F, BN_G;
+    BigNat EC_BN_A, EC_BN_B, EC_BN_C, EC_BN_D, EC_BN_E, EC_BN_F, EC_BN_G;
     public static BigNat TWO, THREE, ONE_COORD;
 
     public final short MAX_EXP_BIT_LENGTH;
@@ -39,61 +71,75 @@ public class ResourceManager {
     public final short MAX_COORD_SIZE;
 
     public ResourceManager(short maxEcLength) {
-        short min = OperationSupport.getInstance().MIN_RSA_BIT_LENGTH;
-        if (maxEcLength <= (short) 256) {
-            MAX_EXP_BIT_LENGTH = (short) 512 < min ? min : (short) 512;
-            MAX_SQ_BIT_LENGTH = (short) 768 < min ? min : (short) 768;
-            MAX_POINT_SIZE = (short) 64;
-        }
-        else if (maxEcLength <= (short) 384) {
-            MAX_EXP_BIT_LENGTH = (short) 768 < min ? min : (short) 768;
-            MAX_SQ_BIT_LENGTH = (short) 1024 < min ? min : (short) 1024;
-            MAX_POINT_SIZE = (short) 96;
-        }
-        else if (maxEcLength <= (short) 512) {
-            MAX_EXP_BIT_LENGTH = (short) 1024 < min ? min : (short) 1024;
-            MAX_SQ_BIT_LENGTH = (short) 1280 < min ? min : (short) 1280;
-            MAX_POINT_SIZE = (short) 128;
-        }
-        else {
-            MAX_EXP_BIT_LENGTH = (short) 0;
-            MAX_SQ_BIT_LENGTH = (short) 0;
-            MAX_POINT_SIZE = (short) 0;
+        this(maxEcLength, null);
+    }
+
+    /**
+     * Construct a resource manager with helper objects placed according to an allocator profile.
+     *
+     * @param maxEcLength maximal supported curve bit length
+     * @param allocatorProfile allocator types indexed by allocator id as returned by
+     *                         {@code ObjectAllocator.getProfile()}, all objects are placed in RAM if null
+     */
+    public ResourceManager(short maxEcLength, byte[] allocatorProfile) {
+        if (maxEcLength <= 0 || maxEcLength > (short) 1024) {
             ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALIDLENGTH);
         }
+        OperationSupport support = OperationSupport.getInstance();
+        MAX_EXP_BIT_LENGTH = expBitLength(maxEcLength, support.MIN_RSA_BIT_LENGTH, support.RSA_BIT_LENGTHS);
+        MAX_SQ_BIT_LENGTH = sqBitLength(maxEcLength, support.MIN_RSA_BIT_LENGTH, support.RSA_BIT_LENGTHS);
+        MAX_POINT_SIZE = (short) (2 * coordSize(maxEcLength));
         MAX_SQ_LENGTH = (short) (MAX_SQ_BIT_LENGTH / 8);
         MAX_EXP_LENGTH = (short) (MAX_EXP_BIT_LENGTH / 8);
         MAX_BIGNAT_SIZE = (short) (MAX_EXP_BIT_LENGTH / 8);
         MAX_COORD_SIZE = (short) (MAX_POINT_SIZE / 2);
+        Y_CACHE_ENTRY_LENGTH = (short) (1 + 2 * MAX_COORD_SIZE);
+        ARENA_SIZE = (short) (5 * (MAX_BIGNAT_SIZE + 1));
 
         memAlloc = new ObjectAllocator();
         memAlloc.setAllAllocatorsRAM();
         // if required, memory for helper objects and arrays can be in persistent memory to save RAM (or some tradeoff)
         // ObjectAllocator.setAllAllocatorsEEPROM();
         // ObjectAllocator.setAllocatorsTradeoff();
+        // ObjectAllocator.setAllAllocatorsDeselect(); // RAM shared with other applets while not selected
+        if (allocatorProfile != null) {
+            memAlloc.loadProfile(allocatorProfile, (short) 0);
+        }
 
 
         ARRAY_A = memAlloc.allocateByteArray(MAX_SQ_LENGTH, memAlloc.getAllocatorType(ObjectAllocator.ARRAY_A));
-        locker.registerLock(ARRAY_A);
+        ARRAY_A_LOCK = locker.registerLock(ARRAY_A, ObjectAllocator.ARRAY_A);
         ARRAY_B = memAlloc.allocateByteArray(MAX_SQ_LENGTH, memAlloc.getAllocatorType(ObjectAllocator.ARRAY_B));
-        locker.registerLock(ARRAY_B);
+        ARRAY_B_LOCK = locker.registerLock(ARRAY_B, ObjectAllocator.ARRAY_B);
         POINT_ARRAY_A = memAlloc.allocateByteArray((short) (MAX_POINT_SIZE + 1), memAlloc.getAllocatorType(ObjectAllocator.POINT_ARRAY_A));
-        locker.registerLock(POINT_ARRAY_A);
+        POINT_ARRAY_A_LOCK = locker.registerLock(POINT_ARRAY_A, ObjectAllocator.POINT_ARRAY_A);
         POINT_ARRAY_B = memAlloc.allocateByteArray((short) (MAX_POINT_SIZE + 1), memAlloc.getAllocatorType(ObjectAllocator.POINT_ARRAY_B));
-        locker.registerLock(POINT_ARRAY_B);
+        POINT_ARRAY_B_LOCK = locker.registerLock(POINT_ARRAY_B, ObjectAllocator.POINT_ARRAY_B);
         hashEngine = MessageDigest.getInstance(MessageDigest.ALG_SHA_256, false);
         HASH_ARRAY = memAlloc.allocateByteArray(hashEngine.getLength(), memAlloc.getAllocatorType(ObjectAllocator.HASH_ARRAY));
-        locker.registerLock(HASH_ARRAY);
+        HASH_ARRAY_LOCK = locker.registerLock(HASH_ARRAY, ObjectAllocator.HASH_ARRAY);
+        Y_CACHE = memAlloc.allocateByteArray((short) (Y_CACHE_ENTRIES * Y_CACHE_ENTRY_LENGTH), memAlloc.getAllocatorType(ObjectAllocator.Y_CACHE));
+        locker.registerLock(Y_CACHE, ObjectAllocator.Y_CACHE);
+        yCacheCurves = new Object[Y_CACHE_ENTRIES];
+        keyAgreementKeys = JCSystem.makeTransientObjectArray((short) 2, JCSystem.CLEAR_ON_RESET);
+        disposablePairs = new Object[DISPOSABLE_PAIRS];
+        disposableOwners = JCSystem.makeTransientObjectArray(DISPOSABLE_PAIRS, JCSystem.CLEAR_ON_RESET);
+        ARENA = memAlloc.allocateByteArray(ARENA_SIZE, memAlloc.getAllocatorType(ObjectAllocator.ARENA));
+        locker.registerLock(ARENA, ObjectAllocator.ARENA);
+        arenaState = JCSystem.makeTransientShortArray((short) (ARENA_VIEWS + 2), JCSystem.CLEAR_ON_RESET);
+        arenaDirty = JCSystem.makeTransientShortArray((short) 2, JCSystem.CLEAR_ON_RESET);
+        arenaViews = new BigNat[ARENA_VIEWS];
+        for (short i = 0; i < ARENA_VIEWS; i++) {
+            arenaViews[i] = new BigNat(this);
+        }
 
         BN_WORD = new BigNat((short) 2, memAlloc.getAllocatorType(ObjectAllocator.BN_WORD), this);
+        BN_WORD.registerLock(ObjectAllocator.BN_WORD);
 
-        BN_A = new BigNat(MAX_BIGNAT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.BN_A), this);
-        BN_B = new BigNat(MAX_BIGNAT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.BN_B), this);
-        BN_C = new BigNat(MAX_BIGNAT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.BN_C), this);
-        BN_D = new BigNat(MAX_BIGNAT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.BN_D), this);
-        BN_E = new BigNat(MAX_BIGNAT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.BN_E), this);
         BN_F = new BigNat(MAX_SQ_LENGTH, memAlloc.getAllocatorType(ObjectAllocator.BN_F), this);
         BN_G = new BigNat(MAX_SQ_LENGTH, memAlloc.getAllocatorType(ObjectAllocator.BN_G), this);
+        BN_F.registerLock(ObjectAllocator.BN_F);
+        BN_G.registerLock(ObjectAllocator.BN_G);
 
         EC_BN_A = new BigNat(MAX_POINT_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_A), this);
         EC_BN_B = new BigNat(MAX_COORD_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_B), this);
@@ -101,6 +147,14 @@ public class ResourceManager {
         EC_BN_D = new BigNat(MAX_COORD_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_D), this);
         EC_BN_E = new BigNat(MAX_COORD_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_E), this);
         EC_BN_F = new BigNat(MAX_COORD_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_F), this);
+        EC_BN_G = new BigNat(MAX_COORD_SIZE, memAlloc.getAllocatorType(ObjectAllocator.EC_BN_G), this);
+        EC_BN_A.registerLock(ObjectAllocator.EC_BN_A);
+        EC_BN_B.registerLock(ObjectAllocator.EC_BN_B);
+        EC_BN_C.registerLock(ObjectAllocator.EC_BN_C);
+        EC_BN_D.registerLock(ObjectAllocator.EC_BN_D);
+        EC_BN_E.registerLock(ObjectAllocator.EC_BN_E);
+        EC_BN_F.registerLock(ObjectAllocator.EC_BN_F);
+        EC_BN_G.registerLock(ObjectAllocator.EC_BN_G);
 
         // Allocate BN constants always in EEPROM (only reading)
         TWO = new BigNat((short) 1, JCSystem.MEMORY_TYPE_PERSISTENT, this);
@@ -117,8 +171,6 @@ public class ResourceManager {
             // ecMultKA = KeyAgreement.getInstance(KeyAgreement.ALG_EC_SVDP_DH_PLAIN, false);
             ecMultKA = KeyAgreement.getInstance((byte) 3, false);
         }
-        // verifyEcdsa = Signature.getInstance(Signature.ALG_ECDSA_SHA_256, false);
-        verifyEcdsa = Signature.getInstance((byte) 33, false);
         if (OperationSupport.getInstance().EC_HW_ADD) {
             // ecAddKA = KeyAgreement.getInstance(KeyAgreement.ALG_EC_PACE_GM, false);
             ecAddKA = KeyAgreement.getInstance((byte) 5, false);
@@ -150,6 +202,57 @@ public class ResourceManager {
         expCiph = Cipher.getInstance(Cipher.ALG_RSA_NOPAD, false);
     }
 
+    /**
+     * Get the key length of the RSA engine used by modExp for curves of a given bit length.
+     * Products of two coordinates have to fit into it.
+     *
+     * @param maxEcLength maximal supported curve bit length
+     * @param minBitLength minimal RSA key length of the card
+     * @param supportedBitLengths RSA key lengths supported by the card in ascending order
+     * @return key length in bits
+     */
+    static short expBitLength(short maxEcLength, short minBitLength, short[] supportedBitLengths) {
+        return rsaBitLength((short) (16 * coordSize(maxEcLength)), minBitLength, supportedBitLengths);
+    }
+
+    /**
+     * Get the key length of the RSA engine used by sq for curves of a given bit length.
+     * Squares of sums of two coordinates have to fit into it.
+     *
+     * @param maxEcLength maximal supported curve bit length
+     * @param minBitLength minimal RSA key length of the card
+     * @param supportedBitLengths RSA key lengths supported by the card in ascending order
+     * @return key length in bits
+     */
+    static short sqBitLength(short maxEcLength, short minBitLength, short[] supportedBitLengths) {
+        return rsaBitLength((short) (8 * (2 * (coordSize(maxEcLength) + 1) + 1)), minBitLength, supportedBitLengths);
+    }
+
+    private static short coordSize(short maxEcLength) {
+        return (short) ((short) (maxEcLength + 7) / 8);
+    }
+
+    /**
+     * Get the shortest RSA key length supported by the card that is not shorter than a given length.
+     *
+     * @param bitLength required key length in bits
+     * @param minBitLength minimal RSA key length of the card
+     * @param supportedBitLengths RSA key lengths supported by the card in ascending order
+     * @return supported key length in bits
+     */
+    private static short rsaBitLength(short bitLength, short minBitLength, short[] supportedBitLengths) {
+        if (bitLength < minBitLength) {
+            bitLength = minBitLength;
+        }
+        for (short i = 0; i < (short) supportedBitLengths.length; i++) {
+            if (supportedBitLengths[i] >= bitLength) {
+                return supportedBitLengths[i];
+            }
+        }
+        ISOException.throwIt(ReturnCodes.SW_ECPOINT_INVALIDLENGTH);
+        return 0;
+    }
+
     /**
      * Preloads modSq engine with a given mod. Can increase performance when the same mod is used repeatedly. The
      * provided mod is assumed to be fixed.
@@ -166,7 +269,7 @@ public class ResourceManager {
         byte[] tmpBuffer = ARRAY_A;
 
         tmpMod.lock();
-        lock(ARRAY_A);
+        lock(ARRAY_A_LOCK);
         tmpMod.setSize(MAX_EXP_LENGTH);
         if (OperationSupport.getInstance().RSA_PUB) {
             if (OperationSupport.getInstance().RSA_KEY_REFRESH) {
@@ -204,40 +307,380 @@ public class ResourceManager {
             }
             modSqCiph.init(modSqPriv, Cipher.MODE_DECRYPT);
         }
-        unlock(ARRAY_A);
+        unlock(ARRAY_A_LOCK);
         tmpMod.unlock();
     }
 
     /**
-     * Erase all values stored in helper objects
+     * Finds cached Y coordinate for the given curve and X coordinate.
+     *
+     * @param curve   curve of the point
+     * @param x       array with X coordinate
+     * @param xOffset offset of X coordinate
+     * @param xLength length of X coordinate
+     * @return offset of the cached Y coordinate within Y_CACHE, -1 if not present
      */
-    void erase() {
-        BN_WORD.erase();
+    short findY(Object curve, byte[] x, short xOffset, short xLength) {
+        for (short i = 0; i < Y_CACHE_ENTRIES; i++) {
+            short entry = (short) (i * Y_CACHE_ENTRY_LENGTH);
+            if (Y_CACHE[entry] != 0 && yCacheCurves[i] == curve
+                    && Util.arrayCompare(Y_CACHE, (short) (entry + 1), x, xOffset, xLength) == 0) {
+                touchY(i);
+                return (short) (entry + 1 + MAX_COORD_SIZE);
+            }
+        }
+        return -1;
+    }
 
-        BN_A.erase();
-        BN_B.erase();
-        BN_C.erase();
-        BN_D.erase();
-        BN_E.erase();
-        BN_F.erase();
-        BN_G.erase();
+    /**
+     * Stores recovered Y coordinate into cache, replacing the least recently used entry.
+     *
+     * @param curve   curve of the point
+     * @param x       array with X coordinate
+     * @param xOffset offset of X coordinate
+     * @param xLength length of X coordinate
+     * @param y       Y coordinate
+     */
+    void storeY(Object curve, byte[] x, short xOffset, short xLength, BigNat y) {
+        short victim = 0;
+        byte oldest = 0;
+        for (short i = 0; i < Y_CACHE_ENTRIES; i++) {
+            byte age = Y_CACHE[(short) (i * Y_CACHE_ENTRY_LENGTH)];
+            if (age == 0) {
+                victim = i;
+                break;
+            }
+            if (age > oldest) {
+                oldest = age;
+                victim = i;
+            }
+        }
+        short entry = (short) (victim * Y_CACHE_ENTRY_LENGTH);
+        Y_CACHE[entry] = 0;
+        yCacheCurves[victim] = curve;
+        Util.arrayCopyNonAtomic(x, xOffset, Y_CACHE, (short) (entry + 1), xLength);
+        y.prependZeros(xLength, Y_CACHE, (short) (entry + 1 + MAX_COORD_SIZE));
+        touchY(victim);
+    }
+
+    /**
+     * Marks cache entry as the most recently used one.
+     *
+     * @param index index of the entry
+     */
+    private void touchY(short index) {
+        byte age = Y_CACHE[(short) (index * Y_CACHE_ENTRY_LENGTH)];
+        for (short i = 0; i < Y_CACHE_ENTRIES; i++) {
+            short entry = (short) (i * Y_CACHE_ENTRY_LENGTH);
+            if (Y_CACHE[entry] != 0 && (age == 0 || Y_CACHE[entry] < age)) {
+                Y_CACHE[entry]++;
+            }
+        }
+        Y_CACHE[(short) (index * Y_CACHE_ENTRY_LENGTH)] = 1;
+    }
+
+    /**
+     * Returns disposable EC key pair of provided bit length shared by all curves of that length. The pair is
+     * allocated on first request, no key is generated and no domain parameters are set.
+     *
+     * @param bitLength key bit length
+     * @return shared key pair
+     */
+    KeyPair getDisposablePair(short bitLength) {
+        for (short i = 0; i < DISPOSABLE_PAIRS; i++) {
+            if (disposablePairs[i] == null) {
+                ECPublicKey pubKey = (ECPublicKey) KeyBuilder.buildKey(KeyBuilder.TYPE_EC_FP_PUBLIC, bitLength, false);
+                ECPrivateKey privKey = (ECPrivateKey) KeyBuilder.buildKey(KeyBuilder.TYPE_EC_FP_PRIVATE, bitLength, false);
+                disposablePairs[i] = new KeyPair(pubKey, privKey);
+            }
+            KeyPair pair = (KeyPair) disposablePairs[i];
+            if (pair.getPublic().getSize() == bitLength) {
+                return pair;
+            }
+        }
+        ISOException.throwIt(ReturnCodes.SW_OPERATION_NOT_SUPPORTED);
+        return null;
+    }
+
+    /**
+     * Records provided curve as the holder of domain parameters of a shared disposable key pair.
+     *
+     * @param pair shared key pair
+     * @param owner curve claiming the pair
+     * @return true if the pair was held by another curve (or by none after reset) and domain parameters must be set
+     */
+    boolean claimDisposablePair(KeyPair pair, ECCurve owner) {
+        for (short i = 0; i < DISPOSABLE_PAIRS; i++) {
+            if (disposablePairs[i] == pair) {
+                if (disposableOwners[i] == owner) {
+                    return false;
+                }
+                if (disposableOwners[i] != null) {
+                    // Only the holder of a pair keeps digests of its values
+                    ((ECCurve) disposableOwners[i]).invalidateDisposable();
+                }
+                disposableOwners[i] = owner;
+                return true;
+            }
+        }
+        return true;
+    }
 
-        EC_BN_A.erase();
-        EC_BN_B.erase();
-        EC_BN_C.erase();
-        EC_BN_D.erase();
-        EC_BN_E.erase();
-        EC_BN_F.erase();
+    /**
+     * Initializes KeyAgreement engine with provided key unless the engine was already initialized with it
+     * and the key has not changed since. Changes of the key must be reported by {@code invalidateKeyAgreements}.
+     *
+     * @param keyAgreement ecMultKA or ecAddKA
+     * @param key private key
+     */
+    void initKeyAgreement(KeyAgreement keyAgreement, PrivateKey key) {
+        short index = keyAgreement == ecMultKA ? (short) 0 : (short) 1;
+        if (keyAgreementKeys[index] != key) {
+            keyAgreement.init(key);
+            keyAgreementKeys[index] = key;
+        }
+    }
 
-        Util.arrayFillNonAtomic(ARRAY_A, (short) 0, (short) ARRAY_A.length, (byte) 0);
-        Util.arrayFillNonAtomic(ARRAY_B, (short) 0, (short) ARRAY_B.length, (byte) 0);
-        Util.arrayFillNonAtomic(POINT_ARRAY_A, (short) 0, (short) POINT_ARRAY_A.length, (byte) 0);
+    /**
+     * Marks KeyAgreement engines initialized with provided key as stale.
+     *
+     * @param key modified key
+     */
+    void invalidateKeyAgreements(Object key) {
+        for (short i = 0; i < (short) keyAgreementKeys.length; i++) {
+            if (keyAgreementKeys[i] == key) {
+                keyAgreementKeys[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Erase all values stored in helper objects. Only the parts written since the previous erase are cleared,
+     * so the cost follows the work done. Digests of values loaded into disposable keys are erased as well.
+     * Must not be called during an operation.
+     */
+    public void erase() {
+        BN_WORD.eraseDirty();
+
+        BN_F.eraseDirty();
+        BN_G.eraseDirty();
+
+        EC_BN_A.eraseDirty();
+        EC_BN_B.eraseDirty();
+        EC_BN_C.eraseDirty();
+        EC_BN_D.eraseDirty();
+        EC_BN_E.eraseDirty();
+        EC_BN_F.eraseDirty();
+        EC_BN_G.eraseDirty();
+
+        eraseNonZero(ARRAY_A);
+        eraseNonZero(ARRAY_B);
+        eraseNonZero(POINT_ARRAY_A);
+        eraseNonZero(HASH_ARRAY);
+        for (short i = 0; i < DISPOSABLE_PAIRS; i++) {
+            if (disposableOwners[i] != null) {
+                ((ECCurve) disposableOwners[i]).invalidateDisposable();
+            }
+        }
+        for (short i = 0; i < Y_CACHE_ENTRIES; i++) {
+            short entry = (short) (i * Y_CACHE_ENTRY_LENGTH);
+            if (Y_CACHE[entry] != 0) {
+                Util.arrayFillNonAtomic(Y_CACHE, entry, Y_CACHE_ENTRY_LENGTH, (byte) 0);
+            }
+        }
+        short dirty = arenaDirty[1] == 1 ? arenaDirty[0] : ARENA_SIZE;
+        Util.arrayFillNonAtomic(ARENA, (short) 0, dirty, (byte) 0);
+        arenaDirty[0] = 0;
+        arenaDirty[1] = 1;
+    }
+
+    /**
+     * Erase a shared array up to its last non-zero byte. The arrays are written at arbitrary offsets by their users,
+     * so the written part is found by reading instead of being tracked, the zero tail is not rewritten.
+     *
+     * @param array the array
+     */
+    private static void eraseNonZero(byte[] array) {
+        short i = (short) (array.length - 1);
+        while (i >= 0 && array[i] == 0) {
+            i--;
+        }
+        Util.arrayFillNonAtomic(array, (short) 0, (short) (i + 1), (byte) 0);
+    }
+
+    /**
+     * Get the current position of the scratch arena.
+     *
+     * @return mark to be passed to release
+     */
+    public short mark() {
+        return arenaState[0];
+    }
+
+    /**
+     * Return all BigNats borrowed from the scratch arena since the given mark.
+     *
+     * @param mark position obtained from mark
+     */
+    public void release(short mark) {
+        if (mark < 0 || mark > arenaState[0]) {
+            ISOException.throwIt(ReturnCodes.SW_ARENA_INVALIDMARK);
+        }
+        arenaState[0] = mark;
+    }
+
+    /**
+     * Borrow a temporary BigNat from the scratch arena. It stays valid until release is called with a mark
+     * obtained before borrowing it. The value is not erased.
+     *
+     * @param size size of the BigNat in bytes
+     * @return BigNat backed by the arena
+     */
+    public BigNat borrowBigNat(short size) {
+        short depth = arenaState[0];
+        short start = arenaState[(short) (depth + 1)];
+        short next = (short) (start + size + 1);
+        if (depth == ARENA_VIEWS || size < 0 || next > ARENA_SIZE) {
+            ISOException.throwIt(ReturnCodes.SW_ARENA_EXHAUSTED);
+        }
+        BigNat view = arenaViews[depth];
+        view.bind(ARENA, start, size);
+        arenaState[(short) (depth + 2)] = next;
+        arenaState[0] = (short) (depth + 1);
+        if (next > arenaDirty[0]) {
+            arenaDirty[0] = next;
+        }
+        if (PROFILE_PEAK_USAGE && next > arenaPeak) {
+            arenaPeak = next;
+        }
+        return view;
+    }
+
+    /**
+     * Start a new peak usage measurement. Peak sizes of helper BigNats are cleared and the shared arrays are
+     * painted with PEAK_PAINT, so values they hold are lost. Peak sizes are recorded until stopPeakUsage is called.
+     * Must not be called during an operation.
+     */
+    public void resetPeakUsage() {
+        BN_WORD.resetPeakSize();
+
+        BN_F.resetPeakSize();
+        BN_G.resetPeakSize();
+
+        EC_BN_A.resetPeakSize();
+        EC_BN_B.resetPeakSize();
+        EC_BN_C.resetPeakSize();
+        EC_BN_D.resetPeakSize();
+        EC_BN_E.resetPeakSize();
+        EC_BN_F.resetPeakSize();
+        EC_BN_G.resetPeakSize();
+
+        Util.arrayFillNonAtomic(ARRAY_A, (short) 0, (short) ARRAY_A.length, PEAK_PAINT);
+        Util.arrayFillNonAtomic(ARRAY_B, (short) 0, (short) ARRAY_B.length, PEAK_PAINT);
+        Util.arrayFillNonAtomic(POINT_ARRAY_A, (short) 0, (short) POINT_ARRAY_A.length, PEAK_PAINT);
+        Util.arrayFillNonAtomic(POINT_ARRAY_B, (short) 0, (short) POINT_ARRAY_B.length, PEAK_PAINT);
+        Util.arrayFillNonAtomic(HASH_ARRAY, (short) 0, (short) HASH_ARRAY.length, PEAK_PAINT);
+        arenaPeak = 0;
+        PROFILE_PEAK_USAGE = true;
+    }
+
+    /**
+     * Stop recording peak sizes of helper BigNats. The sizes recorded so far stay available to getPeakUsage.
+     */
+    public void stopPeakUsage() {
+        PROFILE_PEAK_USAGE = false;
+    }
+
+    /**
+     * Write the allocated and peak used length of each helper object since the last resetPeakUsage. For every
+     * allocator id (see ObjectAllocator) two shorts are written at outOffset + 4 * id: the allocated length and
+     * the peak length. Peak of a BigNat is its largest size, peak of a shared array is the end of its used part.
+     * Curve constants are always fully used.
+     *
+     * @param outBuffer output buffer
+     * @param outOffset start offset inside outBuffer
+     * @return number of bytes written
+     */
+    public short getPeakUsage(byte[] outBuffer, short outOffset) {
+        putPeak(outBuffer, outOffset, ObjectAllocator.ARRAY_A, (short) ARRAY_A.length, paintedEnd(ARRAY_A));
+        putPeak(outBuffer, outOffset, ObjectAllocator.ARRAY_B, (short) ARRAY_B.length, paintedEnd(ARRAY_B));
+        putPeak(outBuffer, outOffset, ObjectAllocator.BN_WORD, BN_WORD);
+
+        putPeak(outBuffer, outOffset, ObjectAllocator.BN_F, BN_F);
+        putPeak(outBuffer, outOffset, ObjectAllocator.BN_G, BN_G);
+
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_A, EC_BN_A);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_B, EC_BN_B);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_C, EC_BN_C);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_D, EC_BN_D);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_E, EC_BN_E);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_F, EC_BN_F);
+        putPeak(outBuffer, outOffset, ObjectAllocator.EC_BN_G, EC_BN_G);
+
+        putPeak(outBuffer, outOffset, ObjectAllocator.POINT_ARRAY_A, (short) POINT_ARRAY_A.length, paintedEnd(POINT_ARRAY_A));
+        putPeak(outBuffer, outOffset, ObjectAllocator.POINT_ARRAY_B, (short) POINT_ARRAY_B.length, paintedEnd(POINT_ARRAY_B));
+        putPeak(outBuffer, outOffset, ObjectAllocator.HASH_ARRAY, (short) HASH_ARRAY.length, paintedEnd(HASH_ARRAY));
+
+        short cached = 0;
+        for (short i = 0; i < Y_CACHE_ENTRIES; i++) {
+            if (Y_CACHE[(short) (i * Y_CACHE_ENTRY_LENGTH)] != 0) {
+                cached += Y_CACHE_ENTRY_LENGTH;
+            }
+        }
+        putPeak(outBuffer, outOffset, ObjectAllocator.Y_CACHE, (short) Y_CACHE.length, cached);
+        putPeak(outBuffer, outOffset, ObjectAllocator.ARENA, ARENA_SIZE, arenaPeak);
+
+        putPeak(outBuffer, outOffset, ObjectAllocator.CURVE_CONSTANTS, curveConstantsLength, curveConstantsLength);
+        return (short) (4 * ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH);
+    }
+
+    private void putPeak(byte[] outBuffer, short outOffset, byte allocatorId, BigNat bn) {
+        putPeak(outBuffer, outOffset, allocatorId, bn.capacity(), bn.getPeakSize());
+    }
+
+    private void putPeak(byte[] outBuffer, short outOffset, byte allocatorId, short length, short peak) {
+        short off = (short) (outOffset + 4 * allocatorId);
+        Util.setShort(outBuffer, off, length);
+        Util.setShort(outBuffer, (short) (off + 2), peak);
+    }
+
+    /**
+     * Find the end of the part of an array overwritten since it was painted by resetPeakUsage.
+     *
+     * @param array the array
+     * @return index after the last byte differing from PEAK_PAINT
+     */
+    private static short paintedEnd(byte[] array) {
+        for (short i = (short) (array.length - 1); i >= 0; i--) {
+            if (array[i] != PEAK_PAINT) {
+                return (short) (i + 1);
+            }
+        }
+        return 0;
     }
 
     /// [DependencyBegin:ObjectLocker]
-    public static final byte LOCKER_ARRAYS = 5;
+    public static final byte LOCKER_ARRAYS = 7;
     public static final byte LOCKER_OBJECTS = 1;
     public ObjectLocker locker = new ObjectLocker((short) (LOCKER_ARRAYS + LOCKER_OBJECTS));
+    // Lock handles of the shared arrays
+    short ARRAY_A_LOCK, ARRAY_B_LOCK, POINT_ARRAY_A_LOCK, POINT_ARRAY_B_LOCK, HASH_ARRAY_LOCK;
+
+    /**
+     * Compute an allocator profile from the locks counted by the locker, see {@code ObjectLocker.setProfileLockCounts()}.
+     * The most frequently locked helper objects are placed in RAM within the budget. The profile can be passed
+     * to the constructor of a new ResourceManager. Allocator types of memAlloc are replaced by the profile,
+     * objects already allocated are not moved.
+     *
+     * @param ramBudget number of bytes of RAM available for the helper objects
+     * @param outBuffer output buffer for the profile
+     * @param outOffset start offset inside outBuffer
+     * @return length of the profile
+     */
+    public short buildAllocatorProfile(short ramBudget, byte[] outBuffer, short outOffset) {
+        memAlloc.setAllocatorsProfile(locker.profileLockCounts, locker.profileLockLengths, ramBudget);
+        return memAlloc.getProfile(outBuffer, outOffset);
+    }
 
     /**
      * Refresh RAM objects after reset.
@@ -265,25 +708,29 @@ public class ResourceManager {
         locker.unlock(objToUnlock);
     }
 
+    /**
+     * Lock an object by its handle
+     *
+     * @param handle handle returned by registerLock
+     */
+    public void lock(short handle) {
+        locker.lock(handle);
+    }
+
+    /**
+     * Unlock an object by its handle
+     *
+     * @param handle handle returned by registerLock
+     */
+    public void unlock(short handle) {
+        locker.unlock(handle);
+    }
+
     /**
      * Unlocks all locked objects
      */
     public void unlockAll() {
-        if (BN_A.isLocked()) {
-            BN_A.unlock();
-        }
-        if (BN_B.isLocked()) {
-            BN_B.unlock();
-        }
-        if (BN_C.isLocked()) {
-            BN_C.unlock();
-        }
-        if (BN_D.isLocked()) {
-            BN_D.unlock();
-        }
-        if (BN_E.isLocked()) {
-            BN_E.unlock();
-        }
+        release((short) 0);
         if (BN_F.isLocked()) {
             BN_F.unlock();
         }
@@ -309,6 +756,9 @@ public class ResourceManager {
         if (EC_BN_F.isLocked()) {
             EC_BN_F.unlock();
         }
+        if (EC_BN_G.isLocked()) {
+            EC_BN_G.unlock();
+        }
 
         locker.unlockAll();
     }
@@ -13,6 +13,7 @@ public class ReturnCodes {
     public static final short SW_BIGNAT_INVALIDRESIZE           = (short) 0x7004;
     public static final short SW_BIGNAT_INVALIDMULT             = (short) 0x7005;
     public static final short SW_BIGNAT_INVALIDSQ               = (short) 0x7006;
+    public static final short SW_BIGNAT_INVALIDWIDTH            = (short) 0x7007;
     public static final short SW_LOCK_ALREADYLOCKED             = (short) 0x7010;
     public static final short SW_LOCK_NOTLOCKED                 = (short) 0x7011;
     public static final short SW_LOCK_OBJECT_NOT_FOUND          = (short) 0x7012;
@@ -21,6 +22,10 @@ public class ReturnCodes {
     public static final short SW_ECPOINT_INVALIDLENGTH          = (short) 0x7020;
     public static final short SW_ECPOINT_UNEXPECTED_KA_LEN      = (short) 0x7021;
     public static final short SW_ECPOINT_INVALID                = (short) 0x7022;
+    public static final short SW_ECPOINT_INFINITY               = (short) 0x7023;
     public static final short SW_ALLOCATOR_INVALIDOBJID         = (short) 0x7030;
+    public static final short SW_ALLOCATOR_INVALIDPROFILE       = (short) 0x7031;
     public static final short SW_OPERATION_NOT_SUPPORTED        = (short) 0x7040;
+    public static final short SW_ARENA_EXHAUSTED                = (short) 0x7050;
+    public static final short SW_ARENA_INVALIDMARK              = (short) 0x7051;
 }
@@ -27,9 +27,17 @@ public class UnitTests extends Applet {
 
     public final static byte CLA_OC_UT = (byte) 0xB0;
     public final static byte INS_CLEANUP = (byte) 0x03;
+    public final static byte INS_RSA_SIZING = (byte) 0x04;
+    public final static byte INS_ARENA_MIX = (byte) 0x05;
     public final static byte INS_FREE_MEMORY = (byte) 0x06;
     public final static byte INS_GET_ALLOCATOR_STATS = (byte) 0x07;
     public final static byte INS_GET_PROFILE_LOCKS = (byte) 0x08;
+    public final static byte INS_ALLOCATOR_PROFILE = (byte) 0x0a;
+    public final static byte INS_ARENA_EXHAUST = (byte) 0x0b;
+    public final static byte INS_SERVICE = (byte) 0x0c;
+    public final static byte INS_PEAK_USAGE = (byte) 0x0d;
+    public final static byte INS_ERASE = (byte) 0x0e;
+    public final static byte INS_DESELECT_PROFILE = (byte) 0x0f;
 
     public final static byte INS_INT_STR = (byte) 0x09;
     public final static byte INS_INT_ADD = (byte) 0x10;
@@ -47,6 +55,7 @@ public class UnitTests extends Applet {
     public final static byte INS_BN_SQ = (byte) 0x26;
     public final static byte INS_BN_MUL_SCHOOL = (byte) 0x27;
     public final static byte INS_BN_SET_VALUE = (byte) 0x28;
+    public final static byte INS_BN_RECODE = (byte) 0x29;
 
     public final static byte INS_BN_ADD_MOD = (byte) 0x30;
     public final static byte INS_BN_SUB_MOD = (byte) 0x31;
@@ -66,6 +75,11 @@ public class UnitTests extends Applet {
     public final static byte INS_EC_IS_Y_EVEN = (byte) 0x48;
     public final static byte INS_EC_MUL_ADD = (byte) 0x49;
     public final static byte INS_EC_ENCODE = (byte) 0x4a;
+    public final static byte INS_EC_MUL_SW = (byte) 0x4b;
+    public final static byte INS_EC_MUL_X = (byte) 0x4c;
+    public final static byte INS_EC_NORMALIZE_BATCH = (byte) 0x4d;
+    public final static byte INS_EC_IS_ON_CURVE = (byte) 0x4e;
+    public final static byte INS_EC_ENCODE_TO_CURVE = (byte) 0x4f;
 
     // Specific codes to propagate exceptions caught
     // lower byte of exception is value as defined in JCSDK/api_classic/constant-values.htm
@@ -95,6 +109,13 @@ public class UnitTests extends Applet {
     ECCurve customCurve;
     ECPoint customPoint;
 
+    ECCurve curveK1;
+    ECPoint pointK1;
+    ECPoint cachedPoint;
+    ECPoint rawPoint;
+    ECPoint cachedPointK1;
+    ECPoint[] batchPoints;
+
     BigNat bn1;
     BigNat bn2;
     BigNat bn3;
@@ -102,6 +123,12 @@ public class UnitTests extends Applet {
     Integer int1;
     Integer int2;
 
+    MathService service; // Service used as by a client applet, created on first use
+    ResourceManager deselectRm; // Objects in RAM cleared on deselect, created on first use
+    ECCurve deselectCurve;
+    ECPoint deselectPoint;
+    BigNat deselectScalar;
+
     public UnitTests() {
         OperationSupport.getInstance().setCard(CARD_TYPE);
         if (!OperationSupport.getInstance().DEFERRED_INITIALIZATION) {
@@ -121,6 +148,8 @@ public class UnitTests extends Applet {
 
         // Pre-allocate test objects (no new allocation for every tested operation)
         curve = new ECCurve(SecP256r1.p, SecP256r1.a, SecP256r1.b, SecP256r1.G, SecP256r1.r, rm);
+        curve.setSSWU(SecP256r1.a, SecP256r1.b, SecP256r1.sswuZ, null);
+        curve.enableSwMultiplication(); // Software multiplication tests switch EC_SW_MULT on
         memoryInfoOffset = snapshotAvailableMemory((short) 3, memoryInfo, memoryInfoOffset);
         customG = new byte[(short) SecP256r1.G.length];
         Util.arrayCopyNonAtomic(SecP256r1.G, (short) 0, customG, (short) 0, (short) SecP256r1.G.length);
@@ -130,7 +159,18 @@ public class UnitTests extends Applet {
         point1 = new ECPoint(curve);
         memoryInfoOffset = snapshotAvailableMemory((short) 6, memoryInfo, memoryInfoOffset);
         point2 = new ECPoint(curve);
+        cachedPoint = new ECPoint(curve, true);
+        rawPoint = new RawECPoint(curve);
+        batchPoints = new ECPoint[3];
+        for (short i = 0; i < (short) batchPoints.length; i++) {
+            batchPoints[i] = new ECPoint(curve, true);
+        }
         customPoint = new ECPoint(customCurve);
+        curveK1 = new ECCurve(SecP256k1.p, SecP256k1.a, SecP256k1.b, SecP256k1.G, SecP256k1.r, rm);
+        curveK1.setGLV(SecP256k1.beta, SecP256k1.lambda, SecP256k1.g1, SecP256k1.g2, SecP256k1.minusB1, SecP256k1.minusB2);
+        curveK1.setSSWU(SecP256k1.isoA, SecP256k1.isoB, SecP256k1.sswuZ, SecP256k1.isogeny);
+        pointK1 = new ECPoint(curveK1);
+        cachedPointK1 = new ECPoint(curveK1, true);
 
         // Testing BigNat objects used in tests
         memoryInfoOffset = snapshotAvailableMemory((short) 7, memoryInfo, memoryInfoOffset);
@@ -201,6 +241,40 @@ public class UnitTests extends Applet {
                     Util.arrayCopyNonAtomic(rm.locker.profileLockedObjects, (short) 0, apduBuffer, (short) 0, (short) rm.locker.profileLockedObjects.length);
                     apdu.setOutgoingAndSend((short) 0, (short) rm.locker.profileLockedObjects.length);
                     break;
+                case INS_ALLOCATOR_PROFILE:
+                    testAllocatorProfile(apdu, dataLen);
+                    break;
+                case INS_SERVICE:
+                    testService(apdu, dataLen);
+                    break;
+                case INS_ARENA_EXHAUST:
+                    // The arena fits five BigNats of MAX_BIGNAT_SIZE, borrowing the sixth has to fail
+                    for (short i = 0; i < 6; i++) {
+                        rm.borrowBigNat(rm.MAX_BIGNAT_SIZE);
+                    }
+                    break;
+                case INS_ARENA_MIX:
+                    testArenaMix(apdu, dataLen);
+                    break;
+                case INS_PEAK_USAGE:
+                    if (apduBuffer[ISO7816.OFFSET_P1] == 0) {
+                        rm.resetPeakUsage();
+                    } else {
+                        rm.stopPeakUsage();
+                        apdu.setOutgoingAndSend((short) 0, rm.getPeakUsage(apduBuffer, (short) 0));
+                    }
+                    break;
+                case INS_RSA_SIZING:
+                    testRsaSizing(apdu);
+                    break;
+                case INS_DESELECT_PROFILE:
+                    testDeselectProfile(apdu, dataLen);
+                    break;
+                case INS_ERASE:
+                    rm.erase();
+                    apduBuffer[0] = isErased() ? (byte) 1 : (byte) 0;
+                    apdu.setOutgoingAndSend((short) 0, (short) 1);
+                    break;
 
                 case INS_EC_GEN:
                     testEcGen(apdu);
@@ -232,6 +306,21 @@ public class UnitTests extends Applet {
                 case INS_EC_ENCODE:
                     testEcEncode(apdu);
                     break;
+                case INS_EC_MUL_SW:
+                    testEcMulSw(apdu);
+                    break;
+                case INS_EC_MUL_X:
+                    testEcMulX(apdu);
+                    break;
+                case INS_EC_NORMALIZE_BATCH:
+                    testEcNormalizeBatch(apdu);
+                    break;
+                case INS_EC_IS_ON_CURVE:
+                    testEcIsOnCurve(apdu, dataLen);
+                    break;
+                case INS_EC_ENCODE_TO_CURVE:
+                    testEcEncodeToCurve(apdu, dataLen);
+                    break;
 
                 case INS_BN_STR:
                     testBnStr(apdu, dataLen);
@@ -261,6 +350,9 @@ public class UnitTests extends Applet {
                     testBnSetValue(apdu, dataLen);
                     break;
 
+                case INS_BN_RECODE:
+                    testBnRecode(apdu, dataLen);
+                    break;
                 case INS_BN_ADD_MOD:
                     testBnAddMod(apdu, dataLen);
                     break;
@@ -351,12 +443,6 @@ public class UnitTests extends Applet {
     }
 
     void updateAfterReset() {
-        if (curve != null) {
-            curve.updateAfterReset();
-        }
-        if (customCurve != null) {
-            customCurve.updateAfterReset();
-        }
         if (rm != null) {
             rm.refreshAfterReset();
             rm.unlockAll();
@@ -366,33 +452,171 @@ public class UnitTests extends Applet {
     void testEcDbl(APDU apdu) {
         byte[] apduBuffer = apdu.getBuffer();
 
-        customPoint.setW(apduBuffer, ISO7816.OFFSET_CDATA, customCurve.POINT_SIZE);
-        customPoint.makeDouble();
+        ECPoint point;
+        switch (apduBuffer[ISO7816.OFFSET_P2]) {
+            case 0x01:
+                point = pointK1;
+                break;
+            case 0x03:
+            case 0x05:
+            case 0x06:
+                point = cachedPoint;
+                break;
+            case 0x04:
+                point = cachedPointK1;
+                break;
+            default:
+                point = customPoint;
+        }
+
+        point.setW(apduBuffer, ISO7816.OFFSET_CDATA, customCurve.POINT_SIZE);
+        if (apduBuffer[ISO7816.OFFSET_P2] == 0x00) {
+            point.makeDouble();
+        } else if (apduBuffer[ISO7816.OFFSET_P2] == 0x06) {
+            // makeDouble of a point cached in Jacobian coordinates, via KeyAgreement and via software doubling
+            ECPoint swPoint = batchPoints[0];
+            swPoint.setW(apduBuffer, ISO7816.OFFSET_CDATA, customCurve.POINT_SIZE);
+            point.swDouble();
+            point.makeDouble();
+            swPoint.swDouble();
+            boolean previous = OperationSupport.getInstance().EC_SW_DOUBLE;
+            OperationSupport.getInstance().EC_SW_DOUBLE = true;
+            swPoint.makeDouble();
+            OperationSupport.getInstance().EC_SW_DOUBLE = previous;
+
+            short len = point.getW(apduBuffer, (short) 0);
+            len += swPoint.getW(apduBuffer, len);
+            apdu.setOutgoingAndSend((short) 0, len);
+            return;
+        } else if (apduBuffer[ISO7816.OFFSET_P2] == 0x05) {
+            // the key handed out by asPublicKey is set back to the input, the cache must not hide the change
+            point.swDouble();
+            point.asPublicKey().setW(apduBuffer, ISO7816.OFFSET_CDATA, customCurve.POINT_SIZE);
+            point.swDouble();
+        } else if (apduBuffer[ISO7816.OFFSET_P2] >= 0x03) {
+            // consecutive doublings of cached point stay in Jacobian coordinates
+            point.swDouble();
+            point.swDouble();
+        } else {
+            point.swDouble();
+        }
 
-        short len = customPoint.getW(apduBuffer, (short) 0);
+        short len = point.getW(apduBuffer, (short) 0);
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
     void testEcAdd(APDU apdu) {
         byte[] apduBuffer = apdu.getBuffer();
 
-        point1.setW(apduBuffer, ISO7816.OFFSET_CDATA, curve.POINT_SIZE);
+        byte p2 = apduBuffer[ISO7816.OFFSET_P2];
+        ECPoint point = p2 == 0x01 || p2 == 0x02 ? cachedPoint : p2 == 0x04 ? rawPoint : point1;
+
+        point.setW(apduBuffer, ISO7816.OFFSET_CDATA, curve.POINT_SIZE);
         point2.setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + curve.POINT_SIZE), curve.POINT_SIZE);
-        point1.add(point2);
+        if (p2 == 0x01) {
+            // chain of software operations served from cached coordinates
+            point.negate();
+            point.negate();
+        }
+        if (p2 == 0x02) {
+            // Jacobian accumulator 2P plus affine Q
+            point.swDouble();
+            point.addAffine(apduBuffer, (short) (ISO7816.OFFSET_CDATA + curve.POINT_SIZE));
+        } else if (p2 == 0x03) {
+            point.addAffine(apduBuffer, (short) (ISO7816.OFFSET_CDATA + curve.POINT_SIZE));
+        } else {
+            point.add(point2);
+        }
 
-        short len = point1.getW(apduBuffer, (short) 0);
+        short len = point.getW(apduBuffer, (short) 0);
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
     void testEcMul(APDU apdu) {
         byte[] apduBuffer = apdu.getBuffer();
         short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+        byte p2 = apduBuffer[ISO7816.OFFSET_P2];
+        ECPoint point = p2 == 0x01 ? rawPoint : p2 == 0x02 ? pointK1 : point1;
+
+        bn1.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
+        point.setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), point.getCurve().POINT_SIZE);
+        point.multiplication(bn1);
+
+        short len = point.getW(apduBuffer, (short) 0);
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    void testEcMulSw(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+        ECPoint point = apduBuffer[ISO7816.OFFSET_P2] == 0x01 ? pointK1 : point1;
+
+        bn1.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
+        point.setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), point.getCurve().POINT_SIZE);
+        boolean previous = OperationSupport.getInstance().EC_SW_MULT;
+        OperationSupport.getInstance().EC_SW_MULT = true;
+        point.multiplication(bn1);
+        OperationSupport.getInstance().EC_SW_MULT = previous;
+
+        short len = point.getW(apduBuffer, (short) 0);
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    void testEcMulX(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
 
         bn1.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
         point1.setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), curve.POINT_SIZE);
-        point1.multiplication(bn1);
+        boolean previous = OperationSupport.getInstance().EC_SW_MULT;
+        OperationSupport.getInstance().EC_SW_MULT = apduBuffer[ISO7816.OFFSET_P2] == 0x01;
+        short len = point1.multiplyX(bn1, apduBuffer, (short) 0);
+        OperationSupport.getInstance().EC_SW_MULT = previous;
 
-        short len = point1.getW(apduBuffer, (short) 0);
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    void testEcIsOnCurve(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+
+        if (apduBuffer[ISO7816.OFFSET_P2] == 0x01) {
+            point1.decodeValidated(apduBuffer, ISO7816.OFFSET_CDATA, dataLen);
+            short len = point1.getW(apduBuffer, (short) 0);
+            apdu.setOutgoingAndSend((short) 0, len);
+        } else {
+            point1.setW(apduBuffer, ISO7816.OFFSET_CDATA, dataLen);
+            apduBuffer[0] = point1.isOnCurve() ? (byte) 1 : (byte) 0;
+            apdu.setOutgoingAndSend((short) 0, (short) 1);
+        }
+    }
+
+    void testEcEncodeToCurve(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short dstLen = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+        ECPoint point = apduBuffer[ISO7816.OFFSET_P2] == 0x01 ? pointK1 : point1;
+
+        point.encodeToCurve(apduBuffer, (short) (ISO7816.OFFSET_CDATA + dstLen), (short) (dataLen - dstLen), apduBuffer, ISO7816.OFFSET_CDATA, dstLen);
+        short len = point.getW(apduBuffer, (short) 0);
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    void testEcNormalizeBatch(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+
+        // i-th point is doubled (n - 1 - i) times, the last one stays affine
+        short n = (short) batchPoints.length;
+        for (short i = 0; i < n; i++) {
+            batchPoints[i].setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + i * curve.POINT_SIZE), curve.POINT_SIZE);
+            for (short j = (short) (i + 1); j < n; j++) {
+                batchPoints[i].swDouble();
+            }
+        }
+        ECPoint.normalizeBatch(batchPoints, n);
+
+        short len = 0;
+        for (short i = 0; i < n; i++) {
+            len += batchPoints[i].asPublicKey().getW(apduBuffer, len);
+        }
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
@@ -513,6 +737,22 @@ public class UnitTests extends Applet {
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
+    void testBnRecode(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+        short p2 = (short) (apduBuffer[ISO7816.OFFSET_P2] & 0x00FF);
+
+        bn1.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
+        short len;
+        if (p2 == 0) {
+            bn2.fromByteArray(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), (short) (dataLen - p1));
+            len = (short) (2 * bn1.toJSF(bn2, apduBuffer, (short) 0));
+        } else {
+            len = bn1.toWNAF(p2, apduBuffer, (short) 0);
+        }
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
     void testBnSq(APDU apdu, short dataLen) {
         byte[] apduBuffer = apdu.getBuffer();
 
@@ -658,18 +898,204 @@ public class UnitTests extends Applet {
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
+    void testService(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+        byte p1 = apduBuffer[ISO7816.OFFSET_P1];
+        short p2 = (short) (apduBuffer[ISO7816.OFFSET_P2] & 0x00FF);
+
+        if (service == null) {
+            service = new MathServiceApplet();
+        }
+        short len;
+        if (p1 == (byte) 0x80) {
+            // Install parameters with allowed clients, returns 1 if this applet is one of them
+            MathServiceApplet serviceApplet = (MathServiceApplet) service;
+            serviceApplet.setClients(apduBuffer, ISO7816.OFFSET_CDATA, dataLen);
+            apduBuffer[0] = serviceApplet.getShareableInterfaceObject(JCSystem.getAID(), (byte) 0) != null ? (byte) 1 : (byte) 0;
+            apdu.setOutgoingAndSend((short) 0, (short) 1);
+            return;
+        }
+        if (p1 == (byte) 0x81) {
+            // Returns 1 if the previous call, also a failed one, left no operand in the service objects
+            MathServiceApplet serviceApplet = (MathServiceApplet) service;
+            boolean erased = isErased(serviceApplet.bn1) && isErased(serviceApplet.bn2) && isErased(serviceApplet.bn3)
+                    && isGenerator(serviceApplet.point1, apduBuffer) && isGenerator(serviceApplet.point2, apduBuffer)
+                    && isGenerator(serviceApplet.pointK1, apduBuffer) && isGenerator(serviceApplet.pointK1Other, apduBuffer);
+            apduBuffer[0] = erased ? (byte) 1 : (byte) 0;
+            apdu.setOutgoingAndSend((short) 0, (short) 1);
+            return;
+        }
+        if (p1 == 0) {
+            // a || b || mod, a and b have length P2
+            len = service.bnModMult(apduBuffer, ISO7816.OFFSET_CDATA, p2, (short) (ISO7816.OFFSET_CDATA + p2), p2,
+                    (short) (ISO7816.OFFSET_CDATA + 2 * p2), (short) (dataLen - 2 * p2), (short) 0);
+        } else {
+            // scalar || point, scalar has length P2 and P1 - 1 is the curve
+            len = service.ecMultiply((byte) (p1 - 1), apduBuffer, (short) (ISO7816.OFFSET_CDATA + p2), (short) (dataLen - p2),
+                    ISO7816.OFFSET_CDATA, p2, (short) 0);
+        }
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    void testRsaSizing(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short maxEcLength = Util.getShort(apduBuffer, ISO7816.OFFSET_CDATA);
+
+        // P1 selects the RSA key lengths of a card profile, 0 the default ones and 1 the ones of SECORA
+        short minBitLength = 512;
+        short[] supported = OperationSupport.RSA_BIT_LENGTHS_DEFAULT;
+        if (apduBuffer[ISO7816.OFFSET_P1] == 1) {
+            minBitLength = 1024;
+            supported = OperationSupport.RSA_BIT_LENGTHS_SECORA;
+        }
+        Util.setShort(apduBuffer, (short) 0, ResourceManager.expBitLength(maxEcLength, minBitLength, supported));
+        Util.setShort(apduBuffer, (short) 2, ResourceManager.sqBitLength(maxEcLength, minBitLength, supported));
+        apdu.setOutgoingAndSend((short) 0, (short) 4);
+    }
+
+    void testDeselectProfile(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+
+        if (deselectRm == null) {
+            byte[] profile = new byte[ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH];
+            Util.arrayFillNonAtomic(profile, (short) 0, ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+            deselectRm = new ResourceManager((short) 256, profile);
+            deselectCurve = new ECCurve(SecP256r1.p, SecP256r1.a, SecP256r1.b, SecP256r1.G, SecP256r1.r, deselectRm);
+            deselectCurve.enableSwMultiplication();
+            deselectPoint = new ECPoint(deselectCurve);
+            deselectScalar = new BigNat(deselectRm.MAX_BIGNAT_SIZE, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT, deselectRm);
+        }
+        // Simulate RAM cleared by deselect, the curve constants have to be reloaded on first use
+        deselectCurve.pBN.erase();
+        deselectCurve.rBN.erase();
+        deselectCurve.constantsLoaded[0] = false;
+
+        deselectScalar.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
+        deselectPoint.setW(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), deselectCurve.POINT_SIZE);
+        boolean previous = OperationSupport.getInstance().EC_SW_MULT;
+        OperationSupport.getInstance().EC_SW_MULT = true;
+        deselectPoint.multiplication(deselectScalar);
+        OperationSupport.getInstance().EC_SW_MULT = previous;
+
+        short len = deselectPoint.getW(apduBuffer, (short) 0);
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    boolean isErased() {
+        return isErased(rm.BN_WORD) && isErased(rm.BN_F) && isErased(rm.BN_G)
+                && isErased(rm.EC_BN_A) && isErased(rm.EC_BN_B) && isErased(rm.EC_BN_C) && isErased(rm.EC_BN_D)
+                && isErased(rm.EC_BN_E) && isErased(rm.EC_BN_F) && isErased(rm.EC_BN_G)
+                && isErased(rm.ARRAY_A) && isErased(rm.ARRAY_B) && isErased(rm.POINT_ARRAY_A)
+                && isErased(rm.HASH_ARRAY) && isErased(rm.Y_CACHE) && isErased(rm.ARENA)
+                && isErased(curve.disposableDigests) && isErased(curveK1.disposableDigests);
+    }
+
+    boolean isErased(BigNat bn) {
+        bn.setSizeToMax(false);
+        return bn.isZero();
+    }
+
+    boolean isGenerator(ECPoint point, byte[] buffer) {
+        byte[] G = point.getCurve().G;
+        short len = point.getW(buffer, (short) 0);
+        return len == (short) G.length && Util.arrayCompare(buffer, (short) 0, G, (short) 0, len) == 0;
+    }
+
+    boolean isErased(byte[] array) {
+        for (short i = 0; i < (short) array.length; i++) {
+            if (array[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void testAllocatorProfile(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+
+        switch (apduBuffer[ISO7816.OFFSET_P1]) {
+            case 0:
+                rm.locker.resetProfileLocks();
+                rm.locker.setProfileLockCounts(true);
+                break;
+            case 1:
+                // Output profile for the budget given in data followed by lock counts and lengths
+                rm.locker.setProfileLockCounts(false);
+                short budget = Util.getShort(apduBuffer, ISO7816.OFFSET_CDATA);
+                short offset = rm.buildAllocatorProfile(budget, apduBuffer, (short) 0);
+                for (short i = 0; i < ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH; i++) {
+                    offset = Util.setShort(apduBuffer, offset, rm.locker.profileLockCounts[i]);
+                }
+                for (short i = 0; i < ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH; i++) {
+                    offset = Util.setShort(apduBuffer, offset, rm.locker.profileLockLengths[i]);
+                }
+                rm.memAlloc.setAllAllocatorsRAM();
+                apdu.setOutgoingAndSend((short) 0, offset);
+                break;
+            default:
+                // Load the profile given in data and output it back
+                rm.memAlloc.loadProfile(apduBuffer, ISO7816.OFFSET_CDATA);
+                short len = rm.memAlloc.getProfile(apduBuffer, (short) 0);
+                rm.memAlloc.setAllAllocatorsRAM();
+                apdu.setOutgoingAndSend((short) 0, len);
+        }
+    }
+
     void testBnModSqrt(APDU apdu, short dataLen) {
         byte[] apduBuffer = apdu.getBuffer();
         short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
 
         bn1.fromByteArray(apduBuffer, ISO7816.OFFSET_CDATA, p1);
         bn2.fromByteArray(apduBuffer, (short) (ISO7816.OFFSET_CDATA + p1), (short) (dataLen - p1));
-        bn1.modSqrt(bn2);
+        if (apduBuffer[ISO7816.OFFSET_P2] == 1) {
+            // Hold a BigNat borrowed by the caller to check that modSqrt leaves it borrowed and intact
+            BigNat held = rm.borrowBigNat(bn2.length());
+            held.copy(bn2);
+            bn1.modSqrt(bn2);
+            if (rm.mark() != 1 || !held.equals(bn2)) {
+                ISOException.throwIt(ReturnCodes.SW_ARENA_INVALIDMARK);
+            }
+            rm.release((short) 0);
+        } else {
+            bn1.modSqrt(bn2);
+        }
+        if (rm.mark() != 0) {
+            ISOException.throwIt(ReturnCodes.SW_ARENA_INVALIDMARK);
+        }
         short len = bn1.copyToByteArray(apduBuffer, (short) 0);
         apdu.setOutgoingAndSend((short) 0, len);
     }
 
 
+    void testArenaMix(APDU apdu, short dataLen) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
+        short p2 = (short) (apduBuffer[ISO7816.OFFSET_P2] & 0x00FF);
+        short offset = ISO7816.OFFSET_CDATA;
+
+        int1.fromByteArray(apduBuffer, offset, p1);
+        offset += p1;
+        int2.fromByteArray(apduBuffer, offset, p1);
+        offset += p1;
+        bn1.fromByteArray(apduBuffer, offset, p2);
+        offset += p2;
+        bn2.fromByteArray(apduBuffer, offset, p2);
+        offset += p2;
+        short modLen = (short) (dataLen - 2 * p1 - 2 * p2);
+        bn3.fromByteArray(apduBuffer, offset, modLen);
+
+        // Integer.add, Integer.divide and modMult borrow their temporaries from the same part of the arena
+        int1.add(int2);
+        bn1.modMult(bn2, bn3);
+        int1.divide(int2);
+        bn1.modMult(bn2, bn3);
+
+        bn1.prependZeros(modLen, apduBuffer, (short) 0);
+        short len = int1.toByteArray(apduBuffer, modLen);
+        apdu.setOutgoingAndSend((short) 0, (short) (modLen + len));
+    }
+
     void testIntAdd(APDU apdu, short ignoredDataLen) {
         byte[] apduBuffer = apdu.getBuffer();
         short p1 = (short) (apduBuffer[ISO7816.OFFSET_P1] & 0x00FF);
@@ -64,4 +64,16 @@ public class SecP256r1 {
             (byte) 0xf3, (byte) 0xb9, (byte) 0xca, (byte) 0xc2,
             (byte) 0xfc, (byte) 0x63, (byte) 0x25, (byte) 0x51
     };
+
+    // Simplified SWU map constant Z = -10 (RFC 9380)
+    public final static byte[] sswuZ = {
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x01,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+            (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xf5
+    };
 }
@@ -4,11 +4,15 @@ import cz.muni.fi.crocs.rcard.client.CardManager;
 import cz.muni.fi.crocs.rcard.client.CardType;
 import cz.muni.fi.crocs.rcard.client.Util;
 import javacard.framework.ISO7816;
+import javacard.framework.JCSystem;
 
 import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 
+import opencrypto.jcmathlib.MathService;
+import opencrypto.jcmathlib.ObjectAllocator;
 import opencrypto.jcmathlib.OperationSupport;
+import opencrypto.jcmathlib.ReturnCodes;
 import opencrypto.jcmathlib.UnitTests;
 import opencrypto.jcmathlib.SecP256r1;
 import org.bouncycastle.jce.ECNamedCurveTable;
@@ -16,6 +20,7 @@ import org.bouncycastle.jce.interfaces.ECPublicKey;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.jce.spec.ECParameterSpec;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.encoders.Hex;
 import org.junit.jupiter.api.*;
 
 import java.io.BufferedWriter;
@@ -85,6 +90,168 @@ public class JCMathLibTest extends BaseTest {
             statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
         }
 
+        @Test
+        public void eccAddCached() throws Exception {
+            ECPoint point1 = randECPoint();
+            ECPoint point2 = randECPoint();
+            ECPoint sum = point1.add(point2);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_ADD, 0, 1, Util.concat(point1.getEncoded(false), point2.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(sum.getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccAddAffine() throws Exception {
+            ECPoint point1 = randECPoint();
+            ECPoint point2 = randECPoint();
+            byte[] data = Util.concat(point1.getEncoded(false), point2.getEncoded(false));
+            ECPoint[] expected = {point1.twice().add(point2).normalize(), point1.add(point2).normalize()};
+            for (byte p2 = 2; p2 <= 3; ++p2) {
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_ADD, 0, p2, data);
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(expected[p2 - 2].getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccRawPoint() throws Exception {
+            ECPoint point1 = randECPoint();
+            ECPoint point2 = randECPoint();
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_ADD, 0, 4, Util.concat(point1.getEncoded(false), point2.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(point1.add(point2).getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+
+            BigInteger scalar = randomBigNat(256);
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL, scalar.toByteArray().length, 1, Util.concat(scalar.toByteArray(), point1.getEncoded(false)));
+            resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(point1.multiply(scalar).getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccDeselectProfile() throws Exception {
+            ECPoint point = randECPoint();
+            BigInteger scalar = randomBigNat(256);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_DESELECT_PROFILE, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(point.multiply(scalar).getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccService() throws Exception {
+            ECPoint point = randECPoint();
+            BigInteger scalar = randomBigNat(256);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 1 + MathService.CURVE_SECP256R1, scalar.toByteArray().length, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(point.multiply(scalar).getEncoded(false), resp.getData());
+
+            ECPoint pointK1 = ECNamedCurveTable.getParameterSpec("secp256k1").getG().multiply(randomBigNat(256)).normalize();
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 1 + MathService.CURVE_SECP256K1, scalar.toByteArray().length, Util.concat(scalar.toByteArray(), pointK1.getEncoded(false)));
+            resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(pointK1.multiply(scalar).getEncoded(false), resp.getData());
+
+            BigInteger mod = new BigInteger(1, SecP256r1.r);
+            byte[] a = Util.trimLeadingZeroes(randomBigNat(256).mod(mod).toByteArray());
+            byte[] b = Util.trimLeadingZeroes(randomBigNat(256).mod(mod).toByteArray());
+            a = Arrays.copyOfRange(Util.concat(new byte[32], a), a.length, a.length + 32);
+            b = Arrays.copyOfRange(Util.concat(new byte[32], b), b.length, b.length + 32);
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 0, 32, Util.concat(a, b, SecP256r1.r));
+            resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertEquals(new BigInteger(1, a).multiply(new BigInteger(1, b)).mod(mod), new BigInteger(1, resp.getData()));
+            resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 0x81, 0, 1));
+            Assertions.assertArrayEquals(new byte[]{1}, resp.getData());
+
+            // A call failing on an invalid point encoding must not leave the scalar or the point behind
+            byte[] invalid = point.getEncoded(false);
+            invalid[0] = 0x05;
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 1 + MathService.CURVE_SECP256R1, scalar.toByteArray().length, Util.concat(scalar.toByteArray(), invalid));
+            Assertions.assertNotEquals(ISO7816.SW_NO_ERROR & 0xffff, statefulCard.transmit(cmd).getSW());
+            resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 0x81, 0, 1));
+            Assertions.assertArrayEquals(new byte[]{1}, resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccServiceClients() throws Exception {
+            // The service is shared only with applets listed in its install parameters
+            byte[] self = "JCMathLibUT".getBytes();
+            byte[] other = "JCMathLibXX".getBytes();
+            byte[][] clients = {
+                    Util.concat(new byte[]{(byte) other.length}, other, new byte[]{(byte) self.length}, self),
+                    Util.concat(new byte[]{(byte) other.length}, other),
+                    new byte[0]
+            };
+            byte[] expected = {1, 0, 0};
+            for (int i = 0; i < clients.length; i++) {
+                ResponseAPDU resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_SERVICE, 0x80, 0, clients[i], 1));
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(new byte[]{expected[i]}, resp.getData());
+            }
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccIsOnCurve() throws Exception {
+            ECPoint point = randECPoint();
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_IS_ON_CURVE, 0, 0, point.getEncoded(false));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(new byte[]{1}, resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccDecodeValidated() throws Exception {
+            ECPoint point = randECPoint();
+            for (boolean compressed : new boolean[]{false, true}) {
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_IS_ON_CURVE, 0, 1, point.getEncoded(compressed));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(point.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+
+            byte[] invalid = point.getEncoded(false);
+            invalid[invalid.length - 1] ^= 0x01;
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_IS_ON_CURVE, 0, 1, invalid);
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            Assertions.assertEquals(ReturnCodes.SW_ECPOINT_INVALID & 0xffff, resp.getSW());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccEncodeToCurve() throws Exception {
+            // Test vectors of encode_to_curve suites P256_XMD:SHA-256_SSWU_NU_ and secp256k1_XMD:SHA-256_SSWU_NU_ (RFC 9380)
+            String[][] vectors = {
+                    {"P256", "", "04f871caad25ea3b59c16cf87c1894902f7e7b2c822c3d3f73596c5ace8ddd14d187b9ae23335bee057b99bac1e68588b18b5691af476234b8971bc4f011ddc99b"},
+                    {"P256", "abc", "04fc3f5d734e8dce41ddac49f47dd2b8a57257522a865c124ed02b92b5237befa4fe4d197ecf5a62645b9690599e1d80e82c500b22ac705a0b421fac7b47157866"},
+                    {"secp256k1", "", "04a4792346075feae77ac3b30026f99c1441b4ecf666ded19b7522cf65c4c55c5b62c59e2a6aeed1b23be5883e833912b08ba06be7f57c0e9cdc663f31639ff3a7"},
+                    {"secp256k1", "abc", "043f3b5842033fff837d504bb4ce2a372bfeadbdbd84a1d2b678b6e1d7ee426b9d902910d1fef15d8ae2006fc84f2a5a7bda0e0407dc913062c3a493c4f5d876a5"}
+            };
+            for (String[] vector : vectors) {
+                byte[] dst = ("QUUX-V01-CS02-with-" + vector[0] + "_XMD:SHA-256_SSWU_NU_").getBytes();
+                byte[] msg = vector[1].getBytes();
+                int p2 = vector[0].equals("secp256k1") ? 1 : 0;
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_ENCODE_TO_CURVE, dst.length, p2, Util.concat(dst, msg));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(Hex.decode(vector[2]), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
         @Test
         public void eccNegation() throws Exception {
             perfMap.put("eccNegation/INS_EC_NEG", new Long(-1));
@@ -130,6 +297,143 @@ public class JCMathLibTest extends BaseTest {
             statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
         }
 
+        @Test
+        public void eccMultiplySoftware() throws Exception {
+            perfMap.put("eccMultiplySoftware/INS_EC_MUL_SW", new Long(-1));
+            ECPoint point = randECPoint();
+            BigInteger scalar = randomBigNat(256);
+            ECPoint result = point.multiply(scalar);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_SW, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            perfMap.put("eccMultiplySoftware/INS_EC_MUL_SW", statefulCard.getLastTransmitTime());
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(result.getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccMultiplySoftwareGenerator() throws Exception {
+            ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("secp256r1");
+            BigInteger[] scalars = {randomBigNat(256), BigInteger.ONE, BigInteger.valueOf(3), ecSpec.getN().subtract(BigInteger.ONE)};
+            for (BigInteger scalar : scalars) {
+                ECPoint result = ecSpec.getG().multiply(scalar).normalize();
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_SW, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), ecSpec.getG().getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(result.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccMultiplyReduced() throws Exception {
+            // Scalars not lower than r, 2r - 1 gives -P and needs the reduction to detect (k+1)P at infinity
+            BigInteger r = ECNamedCurveTable.getParameterSpec("secp256r1").getN();
+            BigInteger[] scalars = {r.shiftLeft(1).subtract(BigInteger.ONE), r.add(randomBigNat(256))};
+            for (BigInteger scalar : scalars) {
+                ECPoint point = randECPoint();
+                ECPoint result = point.multiply(scalar.mod(r)).normalize();
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(result.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccMultiplySoftwareReduced() throws Exception {
+            // Scalars not lower than r must give the same result as their reduction mod r
+            ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("secp256r1");
+            BigInteger r = ecSpec.getN();
+            ECPoint[] points = {randECPoint(), ecSpec.getG()};
+            for (ECPoint point : points) {
+                BigInteger scalar = r.add(randomBigNat(256));
+                ECPoint result = point.multiply(scalar.mod(r)).normalize();
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_SW, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(result.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccMultiplyRepeatedScalar() throws Exception {
+            // Key setup is skipped for a scalar already loaded in the disposable key, it must be redone after a change
+            BigInteger scalar = randomBigNat(256);
+            BigInteger[] scalars = {scalar, scalar, scalar.add(BigInteger.ONE), scalar};
+            for (BigInteger k : scalars) {
+                ECPoint point = randECPoint();
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL, k.toByteArray().length, 0, Util.concat(k.toByteArray(), point.getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(point.multiply(k).getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccMultiplySharedDisposable() throws Exception {
+            // secp256r1 and secp256k1 share one disposable key pair, domain parameters are swapped on each switch
+            BigInteger scalar = randomBigNat(256);
+            String[] curves = {"secp256r1", "secp256k1", "secp256r1"};
+            for (String curve : curves) {
+                ECPoint point = randECPoint(curve);
+                int p2 = curve.equals("secp256k1") ? 2 : 0;
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL, scalar.toByteArray().length, p2, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(point.multiply(scalar).getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccMultiplyGLV() throws Exception {
+            perfMap.put("eccMultiplyGLV/INS_EC_MUL_SW", new Long(-1));
+            ECParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("secp256k1");
+            BigInteger[] scalars = {randomBigNat(256), BigInteger.ONE, ecSpec.getN().subtract(BigInteger.ONE)};
+            for (BigInteger scalar : scalars) {
+                ECPoint point = randECPoint("secp256k1");
+                ECPoint result = point.multiply(scalar);
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_SW, scalar.toByteArray().length, 1, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                perfMap.put("eccMultiplyGLV/INS_EC_MUL_SW", statefulCard.getLastTransmitTime());
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(result.getEncoded(false), resp.getData());
+            }
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccMultiplyX() throws Exception {
+            perfMap.put("eccMultiplyX/INS_EC_MUL_X", new Long(-1));
+            perfMap.put("eccMultiplyX(ladder)/INS_EC_MUL_X", new Long(-1));
+            ECPoint point = randECPoint();
+            BigInteger scalar = randomBigNat(256);
+            byte[] result = point.multiply(scalar).normalize().getXCoord().getEncoded();
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_X, scalar.toByteArray().length, 0, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+            perfMap.put("eccMultiplyX/INS_EC_MUL_X", statefulCard.getLastTransmitTime());
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(result, resp.getData());
+
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL_X, scalar.toByteArray().length, 1, Util.concat(scalar.toByteArray(), point.getEncoded(false)));
+            resp = statefulCard.transmit(cmd);
+            perfMap.put("eccMultiplyX(ladder)/INS_EC_MUL_X", statefulCard.getLastTransmitTime());
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(result, resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
         @Test
         public void eccIsEqual() throws Exception {
             perfMap.put("eccIsEqual/INS_EC_COMPARE", new Long(-1));
@@ -171,6 +475,76 @@ public class JCMathLibTest extends BaseTest {
             statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
         }
 
+        @Test
+        public void eccDoubleSoftware() throws Exception {
+            // secp256k1 (a = 0) and secp256r1 (a = -3) use specialised doubling formulas
+            for (byte p2 = 1; p2 <= 2; ++p2) {
+                ECPoint point = randECPoint(p2 == 1 ? "secp256k1" : "secp256r1");
+                ECPoint doubled = point.add(point);
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_DBL, 0, p2, point.getEncoded(false));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(doubled.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccDoubleJacobian() throws Exception {
+            for (byte p2 = 3; p2 <= 4; ++p2) {
+                ECPoint point = randECPoint(p2 == 4 ? "secp256k1" : "secp256r1");
+                ECPoint quadrupled = point.multiply(BigInteger.valueOf(4)).normalize();
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_DBL, 0, p2, point.getEncoded(false));
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(quadrupled.getEncoded(false), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void eccDoubleCachedMakeDouble() throws Exception {
+            // The point is doubled into Jacobian coordinates first, makeDouble by KeyAgreement and in software must agree
+            ECPoint point = randECPoint();
+            byte[] quadrupled = point.multiply(BigInteger.valueOf(4)).normalize().getEncoded(false);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_DBL, 0, 6, point.getEncoded(false));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(Util.concat(quadrupled, quadrupled), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccDoubleAfterPublicKey() throws Exception {
+            ECPoint point = randECPoint();
+            ECPoint doubled = point.add(point).normalize();
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_DBL, 0, 5, point.getEncoded(false));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(doubled.getEncoded(false), resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eccNormalizeBatch() throws Exception {
+            ECPoint[] points = {randECPoint(), randECPoint(), randECPoint()};
+            byte[] expected = Util.concat(Util.concat(
+                    points[0].multiply(BigInteger.valueOf(4)).normalize().getEncoded(false),
+                    points[1].multiply(BigInteger.valueOf(2)).normalize().getEncoded(false)),
+                    points[2].getEncoded(false));
+            byte[] data = Util.concat(Util.concat(points[0].getEncoded(false), points[1].getEncoded(false)), points[2].getEncoded(false));
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_NORMALIZE_BATCH, 0, 0, data);
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(expected, resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
         @Test
         public void eccFromX() throws Exception {
             perfMap.put("eccFromX/INS_EC_FROM_X", new Long(-1));
@@ -266,6 +640,30 @@ public class JCMathLibTest extends BaseTest {
 
             cardMngr.transmit(new CommandAPDU(APDU_CLEANUP));
         }
+
+        @Test
+        public void eccDecodeCached() throws Exception {
+            perfMap.put("eccDecodeCached(compressed_in)/INS_EC_ENCODE", new Long(-1));
+            ECPoint[] points = new ECPoint[6];
+            for (int i = 0; i < points.length; ++i) {
+                points[i] = randECPoint();
+            }
+
+            // More points than cache entries, repeated decoding must hit, miss and evict entries
+            for (int round = 0; round < 2; ++round) {
+                for (ECPoint point : points) {
+                    for (ECPoint p : new ECPoint[]{point, point.negate()}) {
+                        CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_ENCODE, p.getEncoded(true).length, 0, p.getEncoded(true));
+                        ResponseAPDU resp = statefulCard.transmit(cmd);
+                        perfMap.put("eccDecodeCached(compressed_in)/INS_EC_ENCODE", statefulCard.getLastTransmitTime());
+
+                        Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                        Assertions.assertArrayEquals(p.getEncoded(false), resp.getData());
+                    }
+                }
+            }
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
     }
 
     @Nested
@@ -402,6 +800,92 @@ public class JCMathLibTest extends BaseTest {
             statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
         }
 
+        @Test
+        public void bigNatRecodeWNAF() throws Exception {
+            for (int width = 2; width <= 8; width += 3) {
+                BigInteger num = randomBigNat(240);
+                byte[] numBytes = Util.trimLeadingZeroes(num.toByteArray());
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_RECODE, numBytes.length, width, numBytes);
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                Assertions.assertArrayEquals(wnaf(num, width), resp.getData());
+                statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+            }
+        }
+
+        @Test
+        public void bigNatRecodeJSF() throws Exception {
+            BigInteger num1 = randomBigNat(120);
+            BigInteger num2 = randomBigNat(112);
+            byte[] num1Bytes = Util.trimLeadingZeroes(num1.toByteArray());
+            byte[] num2Bytes = Util.trimLeadingZeroes(num2.toByteArray());
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_RECODE, num1Bytes.length, 0, Util.concat(num1Bytes, num2Bytes));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(jsf(num1, num2), resp.getData());
+            byte[] digits = resp.getData();
+            BigInteger value1 = BigInteger.ZERO, value2 = BigInteger.ZERO;
+            for (int i = digits.length / 2 - 1; i >= 0; i--) {
+                value1 = value1.shiftLeft(1).add(BigInteger.valueOf(digits[2 * i]));
+                value2 = value2.shiftLeft(1).add(BigInteger.valueOf(digits[2 * i + 1]));
+            }
+            Assertions.assertEquals(num1, value1);
+            Assertions.assertEquals(num2, value2);
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        private byte[] wnaf(BigInteger k, int width) {
+            List<Byte> digits = new ArrayList<>();
+            BigInteger windowSize = BigInteger.ONE.shiftLeft(width);
+            while (k.signum() > 0) {
+                int digit = 0;
+                if (k.testBit(0)) {
+                    digit = k.mod(windowSize).intValue();
+                    if (digit >= windowSize.intValue() / 2) {
+                        digit -= windowSize.intValue();
+                    }
+                    k = k.subtract(BigInteger.valueOf(digit));
+                }
+                digits.add((byte) digit);
+                k = k.shiftRight(1);
+            }
+            byte[] result = new byte[digits.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = digits.get(i);
+            }
+            return result;
+        }
+
+        private byte[] jsf(BigInteger k0, BigInteger k1) {
+            List<Byte> digits = new ArrayList<>();
+            int d0 = 0, d1 = 0;
+            while (k0.add(BigInteger.valueOf(d0)).signum() > 0 || k1.add(BigInteger.valueOf(d1)).signum() > 0) {
+                int l0 = (k0.intValue() + d0) & 7, l1 = (k1.intValue() + d1) & 7;
+                int u0 = 0, u1 = 0;
+                if ((l0 & 1) != 0) {
+                    u0 = (l0 & 3) == 1 ? 1 : -1;
+                    if ((l0 == 3 || l0 == 5) && (l1 & 3) == 2) u0 = -u0;
+                }
+                if ((l1 & 1) != 0) {
+                    u1 = (l1 & 3) == 1 ? 1 : -1;
+                    if ((l1 == 3 || l1 == 5) && (l0 & 3) == 2) u1 = -u1;
+                }
+                if (2 * d0 == 1 + u0) d0 = 1 - d0;
+                if (2 * d1 == 1 + u1) d1 = 1 - d1;
+                digits.add((byte) u0);
+                digits.add((byte) u1);
+                k0 = k0.shiftRight(1);
+                k1 = k1.shiftRight(1);
+            }
+            byte[] result = new byte[digits.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = digits.get(i);
+            }
+            return result;
+        }
+
         @Test
         public void bigNatModSqrt() throws Exception {
             perfMap.put("bigNatModSqrt/INS_BN_SQRT_MOD", new Long(-1));
@@ -422,6 +906,163 @@ public class JCMathLibTest extends BaseTest {
             statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
         }
 
+        @Test
+        public void bigNatModSqrtNested() throws Exception {
+            BigInteger num = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger mod = new BigInteger(1, SecP256r1.p);
+            // Sample num until we get a quadratic residue
+            while (!num.modPow(mod.subtract(BigInteger.valueOf(1)).divide(BigInteger.valueOf(2)), mod).equals(BigInteger.valueOf(1))) {
+                num = randomBigNat(BIGNAT_BIT_LENGTH);
+            }
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_SQRT_MOD, Util.trimLeadingZeroes(num.toByteArray()).length, 1, Util.concat(Util.trimLeadingZeroes(num.toByteArray()), Util.trimLeadingZeroes(mod.toByteArray())));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            BigInteger receivedResult = new BigInteger(1, resp.getData());
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertEquals(receivedResult.modPow(BigInteger.valueOf(2), mod), num);
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void allocatorProfile() throws Exception {
+            final int ids = ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH;
+            final short budget = 300;
+            statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ALLOCATOR_PROFILE, 0, 0));
+            BigInteger num1 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger num2 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger mod = new BigInteger(1, SecP256r1.r);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_MUL_MOD, Util.trimLeadingZeroes(num1.toByteArray()).length, Util.trimLeadingZeroes(num2.toByteArray()).length, Util.concat(Util.trimLeadingZeroes(num1.toByteArray()), Util.trimLeadingZeroes(num2.toByteArray()), Util.trimLeadingZeroes(mod.toByteArray())));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, statefulCard.transmit(cmd).getSW());
+
+            ResponseAPDU resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ALLOCATOR_PROFILE, 1, 0, new byte[]{(byte) (budget >> 8), (byte) budget}));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            byte[] data = resp.getData();
+            Assertions.assertEquals(ids * 5, data.length);
+            int ram = 0;
+            int hottest = 0;
+            for (int i = 0; i < ids; i++) {
+                int count = ((data[ids + 2 * i] & 0xff) << 8) | (data[ids + 2 * i + 1] & 0xff);
+                int hottestCount = ((data[ids + 2 * hottest] & 0xff) << 8) | (data[ids + 2 * hottest + 1] & 0xff);
+                if (count > hottestCount) {
+                    hottest = i;
+                }
+                if (data[i] == JCSystem.MEMORY_TYPE_TRANSIENT_RESET) {
+                    ram += ((data[3 * ids + 2 * i] & 0xff) << 8) | (data[3 * ids + 2 * i + 1] & 0xff);
+                } else {
+                    Assertions.assertEquals(JCSystem.MEMORY_TYPE_PERSISTENT, data[i]);
+                }
+            }
+            Assertions.assertTrue(ram <= budget);
+            Assertions.assertNotEquals(0, data[ids + 2 * hottest] | data[ids + 2 * hottest + 1]);
+            Assertions.assertEquals(JCSystem.MEMORY_TYPE_TRANSIENT_RESET, data[hottest]);
+
+            byte[] profile = Arrays.copyOf(data, ids);
+            resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ALLOCATOR_PROFILE, 2, 0, profile));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(profile, resp.getData());
+
+            profile[0] = 0x7f;
+            resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ALLOCATOR_PROFILE, 2, 0, profile));
+            Assertions.assertEquals(ReturnCodes.SW_ALLOCATOR_INVALIDPROFILE & 0xffff, resp.getSW());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void arenaExhausted() throws Exception {
+            ResponseAPDU resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ARENA_EXHAUST, 0, 0));
+            Assertions.assertEquals(ReturnCodes.SW_ARENA_EXHAUSTED & 0xffff, resp.getSW());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void arenaMix() throws Exception {
+            int num1 = ThreadLocalRandom.current().nextInt(-(1 << 30), 1 << 30);
+            int num2 = ThreadLocalRandom.current().nextInt(1, 1 << 30);
+            BigInteger bn1 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger bn2 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger mod = new BigInteger(1, SecP256r1.r);
+            byte[] modBytes = Util.trimLeadingZeroes(mod.toByteArray());
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ARENA_MIX, intToBytes(num1).length, bn1.toByteArray().length, Util.concat(intToBytes(num1), intToBytes(num2), bn1.toByteArray(), bn2.toByteArray(), modBytes));
+            ResponseAPDU resp = statefulCard.transmit(cmd);
+
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            byte[] data = resp.getData();
+            Assertions.assertEquals(bn1.multiply(bn2).multiply(bn2).mod(mod), new BigInteger(1, Arrays.copyOfRange(data, 0, modBytes.length)));
+            Assertions.assertEquals((num1 + num2) / num2, bytesToInt(Arrays.copyOfRange(data, modBytes.length, data.length)));
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void rsaSizing() throws Exception {
+            // {card profile, curve bit length, exp bit length, sq bit length}
+            int[][] expected = {
+                    {0, 256, 512, 768},
+                    {0, 320, 768, 768},
+                    {0, 384, 768, 896},
+                    {0, 512, 1024, 1280},
+                    {0, 521, 1280, 1280},
+                    {1, 256, 1024, 1024},
+                    {1, 384, 1024, 1024},
+            };
+            for (int[] row : expected) {
+                CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_RSA_SIZING, row[0], 0, new byte[]{(byte) (row[1] >> 8), (byte) row[1]});
+                ResponseAPDU resp = statefulCard.transmit(cmd);
+                Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+                byte[] data = resp.getData();
+                Assertions.assertEquals(row[2], ((data[0] & 0xff) << 8) | (data[1] & 0xff));
+                Assertions.assertEquals(row[3], ((data[2] & 0xff) << 8) | (data[3] & 0xff));
+            }
+        }
+
+        @Test
+        public void peakUsage() throws Exception {
+            final int ids = ObjectAllocator.ALLOCATOR_TYPE_ARRAY_LENGTH;
+            statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_PEAK_USAGE, 0, 0));
+            BigInteger num1 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger num2 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger mod = new BigInteger(1, SecP256r1.r);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_MUL_MOD, Util.trimLeadingZeroes(num1.toByteArray()).length, Util.trimLeadingZeroes(num2.toByteArray()).length, Util.concat(Util.trimLeadingZeroes(num1.toByteArray()), Util.trimLeadingZeroes(num2.toByteArray()), Util.trimLeadingZeroes(mod.toByteArray())));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, statefulCard.transmit(cmd).getSW());
+
+            ResponseAPDU resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_PEAK_USAGE, 1, 0, new byte[1]));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            byte[] data = resp.getData();
+            Assertions.assertEquals(ids * 4, data.length);
+            int[] length = new int[ids];
+            int[] peak = new int[ids];
+            for (int i = 0; i < ids; i++) {
+                length[i] = ((data[4 * i] & 0xff) << 8) | (data[4 * i + 1] & 0xff);
+                peak[i] = ((data[4 * i + 2] & 0xff) << 8) | (data[4 * i + 3] & 0xff);
+                Assertions.assertTrue(length[i] > 0);
+                Assertions.assertTrue(peak[i] <= length[i]);
+            }
+            Assertions.assertTrue(peak[ObjectAllocator.ARENA] >= mod.bitLength() / 8);
+            Assertions.assertEquals(0, peak[ObjectAllocator.EC_BN_A]);
+            Assertions.assertEquals(0, peak[ObjectAllocator.POINT_ARRAY_A]);
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
+        @Test
+        public void eraseHelpers() throws Exception {
+            BigInteger num1 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger num2 = randomBigNat(BIGNAT_BIT_LENGTH);
+            BigInteger mod = new BigInteger(1, SecP256r1.r);
+            CommandAPDU cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_MUL_MOD, Util.trimLeadingZeroes(num1.toByteArray()).length, Util.trimLeadingZeroes(num2.toByteArray()).length, Util.concat(Util.trimLeadingZeroes(num1.toByteArray()), Util.trimLeadingZeroes(num2.toByteArray()), Util.trimLeadingZeroes(mod.toByteArray())));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, statefulCard.transmit(cmd).getSW());
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_BN_SQRT_MOD, Util.trimLeadingZeroes(num1.toByteArray()).length, 0, Util.concat(Util.trimLeadingZeroes(num1.toByteArray()), Util.trimLeadingZeroes(mod.toByteArray())));
+            statefulCard.transmit(cmd);
+            // Leaves digests of the scalar and the point in the disposable key of the curve
+            ECPoint point = randECPoint();
+            cmd = new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_EC_MUL, num1.toByteArray().length, 0, Util.concat(num1.toByteArray(), point.getEncoded(false)));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, statefulCard.transmit(cmd).getSW());
+
+            ResponseAPDU resp = statefulCard.transmit(new CommandAPDU(UnitTests.CLA_OC_UT, UnitTests.INS_ERASE, 0, 0, new byte[1]));
+            Assertions.assertEquals(ISO7816.SW_NO_ERROR & 0xffff, resp.getSW());
+            Assertions.assertArrayEquals(new byte[]{1}, resp.getData());
+            statefulCard.transmit(new CommandAPDU(APDU_CLEANUP));
+        }
+
         @Test
         public void bigNatModAdd() throws Exception {
             perfMap.put("bigNatModAdd/INS_BN_ADD_MOD", new Long(-1));
@@ -666,9 +1307,13 @@ public class JCMathLibTest extends BaseTest {
      * @return ECPoint
      */
     public static ECPoint randECPoint() throws Exception {
+        return randECPoint("secp256r1");
+    }
+
+    public static ECPoint randECPoint(String curveName) throws Exception {
         Security.addProvider(new BouncyCastleProvider());
 
-        ECParameterSpec ecSpec_named = ECNamedCurveTable.getParameterSpec("secp256r1");
+        ECParameterSpec ecSpec_named = ECNamedCurveTable.getParameterSpec(curveName);
         KeyPairGenerator kpg = KeyPairGenerator.getInstance("ECDSA", "BC");
         kpg.initialize(ecSpec_named);
         KeyPair apair = kpg.generateKeyPair();